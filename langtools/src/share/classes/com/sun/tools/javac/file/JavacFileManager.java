@@ -555,7 +555,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     null,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             } else {
                 if (!useOptimizedZip) {
@@ -566,7 +567,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     symbolFilePrefix,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             }
         } catch (FileNotFoundException ex) {
@@ -32,6 +32,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -83,6 +85,10 @@ public class ZipFileIndex {
     public final static long NOT_MODIFIED = Long.MIN_VALUE;
 
 
+    // Ceylon: the biggest compressed entry we read into a reused buffer
+    private static final int MAX_INFLATE_INPUT = 64 * 1024;
+    // Ceylon: the size of the end of central directory record
+    private static final int END_RECORD_SIZE = 22;
     private static boolean NON_BATCH_MODE = System.getProperty("nonBatchMode") != null;// TODO: Use -XD compiler switch for this.
 
     private Map<RelativeDirectory, DirectoryEntry> directories =
@@ -94,7 +100,19 @@ public class ZipFileIndex {
     final File zipFile;
     private Reference<File> absFileRef;
     long zipFileLastModified = NOT_MODIFIED;
+    // Ceylon: used with the modification time to tell if the zip file changed
+    long zipFileLength = -1;
+    // Ceylon: the end of the zip file, which locates its central directory
+    final byte[] zipFileTail;
+    // Ceylon: an estimate of the memory used by the index, in bytes
+    final long estimatedSize;
     private RandomAccessFile zipRandomFile;
+    // Ceylon: read entries from a memory mapping of the zip file rather than
+    // through zipRandomFile, which is then only used to build the index
+    private final boolean mapped;
+    private ByteBuffer zipMap;
+    // Ceylon: reused to read the compressed data of deflated entries
+    private byte[] inflateInput = new byte[0];
     private Entry[] entries;
 
     private boolean readFromIndex = false;
@@ -120,7 +138,14 @@ public class ZipFileIndex {
 
     ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
             boolean useCache, String cacheLocation) throws IOException {
+        this(zipFile, symbolFilePrefix, writeIndex, useCache, cacheLocation, false);
+    }
+
+    ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
+            boolean useCache, String cacheLocation, boolean mapped) throws IOException {
         this.zipFile = zipFile;
+        // we can't map more than 2GB in one buffer
+        this.mapped = mapped && zipFile != null && zipFile.length() <= Integer.MAX_VALUE;
         this.symbolFilePrefix = symbolFilePrefix;
         this.symbolFilePrefixLength = (symbolFilePrefix == null ? 0 :
             symbolFilePrefix.getPath().getBytes("UTF-8").length);
@@ -130,10 +155,54 @@ public class ZipFileIndex {
 
         if (zipFile != null) {
             this.zipFileLastModified = zipFile.lastModified();
+            this.zipFileLength = zipFile.length();
         }
+        this.zipFileTail = readTail(zipFile);
 
         // Validate integrity of the zip file
         checkIndex();
+
+        long size = 0;
+        if (entries != null) {
+            for (Entry entry : entries) {
+                // object headers and fields, plus the name characters
+                size += 64 + 2 * entry.name.length();
+            }
+        }
+        estimatedSize = size;
+    }
+
+    /**
+     * Ceylon: returns the last bytes of the given zip file, which hold the
+     * location and size of its central directory, or null if we can't read
+     * them.
+     */
+    static byte[] readTail(File zipFile) {
+        if (zipFile == null)
+            return null;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+            try {
+                long length = raf.length();
+                byte[] tail = new byte[(int) Math.min(length, END_RECORD_SIZE)];
+                raf.seek(length - tail.length);
+                raf.readFully(tail);
+                return tail;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Ceylon: returns true if the zip file still looks like the one we indexed.
+     */
+    boolean isSameFile() {
+        return zipFile.lastModified() == zipFileLastModified
+                && zipFile.length() == zipFileLength
+                && Arrays.equals(readTail(zipFile), zipFileTail);
     }
 
     @Override
@@ -166,6 +235,7 @@ public class ZipFileIndex {
         boolean isUpToDate = true;
         if (!isUpToDate()) {
             closeFile();
+            zipMap = null;
             isUpToDate = false;
         }
 
@@ -215,6 +285,8 @@ public class ZipFileIndex {
     public synchronized void close() {
         writeIndex();
         closeFile();
+        // the mapping goes away once it is garbage collected
+        zipMap = null;
     }
 
     private void closeFile() {
@@ -355,6 +427,8 @@ public class ZipFileIndex {
     }
 
     synchronized byte[] read(Entry entry) throws IOException {
+        if (mapped)
+            return readBytes(entry);
         openFile();
         byte[] result = readBytes(entry);
         closeFile();
@@ -377,17 +451,19 @@ public class ZipFileIndex {
     private byte[] readBytes(Entry entry) throws IOException {
         byte[] header = getHeader(entry);
         int csize = entry.compressedSize;
-        byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
 
         // is this compressed - offset 8 in the ZipEntry header
-        if (get2ByteLittleEndian(header, 8) == 0)
+        if (get2ByteLittleEndian(header, 8) == 0) {
+            byte[] cbuf = new byte[csize];
+            readData(entry, header, cbuf, csize);
             return cbuf;
+        }
 
+        byte[] cbuf = getInflateInput(csize);
+        readData(entry, header, cbuf, csize);
         int size = entry.size;
         byte[] buf = new byte[size];
-        if (inflate(cbuf, buf) != size)
+        if (inflate(cbuf, csize, buf) != size)
             throw new ZipException("corrupted zip file");
 
         return buf;
@@ -401,6 +477,10 @@ public class ZipFileIndex {
 
         // entry is not compressed?
         if (get2ByteLittleEndian(header, 8) == 0) {
+            if (zipMap != null) {
+                readData(entry, header, buffer, Math.min(buffer.length, entry.compressedSize));
+                return entry.size;
+            }
             zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
             int offset = 0;
             int size = buffer.length;
@@ -414,11 +494,10 @@ public class ZipFileIndex {
         }
 
         int csize = entry.compressedSize;
-        byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
+        byte[] cbuf = getInflateInput(csize);
+        readData(entry, header, cbuf, csize);
 
-        int count = inflate(cbuf, buffer);
+        int count = inflate(cbuf, csize, buffer);
         if (count == -1)
             throw new ZipException("corrupted zip file");
 
@@ -430,9 +509,15 @@ public class ZipFileIndex {
     //----------------------------------------------------------------------------
 
     private byte[] getHeader(Entry entry) throws IOException {
-        zipRandomFile.seek(entry.offset);
         byte[] header = new byte[30];
-        zipRandomFile.readFully(header);
+        if (mapped) {
+            ByteBuffer map = getMap();
+            map.position(entry.offset);
+            map.get(header);
+        } else {
+            zipRandomFile.seek(entry.offset);
+            zipRandomFile.readFully(header);
+        }
         if (get4ByteLittleEndian(header, 0) != 0x04034b50)
             throw new ZipException("corrupted zip file");
         if ((get2ByteLittleEndian(header, 6) & 1) != 0)
@@ -440,11 +525,48 @@ public class ZipFileIndex {
         return header;
     }
 
+    /**
+     * Ceylon: reads the data of an entry, following its header, from the
+     * mapping or from zipRandomFile, which is positioned after the header.
+     */
+    private void readData(Entry entry, byte[] header, byte[] dest, int length) throws IOException {
+        int skip = get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28);
+        if (zipMap != null) {
+            zipMap.position(entry.offset + header.length + skip);
+            zipMap.get(dest, 0, length);
+        } else {
+            zipRandomFile.skipBytes(skip);
+            zipRandomFile.readFully(dest, 0, length);
+        }
+    }
+
+    private ByteBuffer getMap() throws IOException {
+        if (zipMap == null) {
+            RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+            try {
+                // the mapping stays valid once the file is closed
+                zipMap = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+        }
+        return zipMap;
+    }
+
+    private byte[] getInflateInput(int length) {
+        // don't hold on to the buffer of a big resource
+        if (length > MAX_INFLATE_INPUT)
+            return new byte[length];
+        if (inflateInput.length < length)
+            inflateInput = new byte[length];
+        return inflateInput;
+    }
+
   /*
    * Inflate using the java.util.zip.Inflater class
    */
     private SoftReference<Inflater> inflaterRef;
-    private int inflate(byte[] src, byte[] dest) {
+    private int inflate(byte[] src, int length, byte[] dest) {
         Inflater inflater = (inflaterRef == null ? null : inflaterRef.get());
 
         // construct the inflater object or reuse an existing one
@@ -452,7 +574,7 @@ public class ZipFileIndex {
             inflaterRef = new SoftReference<Inflater>(inflater = new Inflater(true));
 
         inflater.reset();
-        inflater.setInput(src);
+        inflater.setInput(src, 0, length);
         try {
             return inflater.inflate(dest);
         } catch (DataFormatException ex) {
@@ -30,8 +30,8 @@ import com.sun.tools.javac.util.Context;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,26 +39,51 @@ import java.util.Map;
 /** A cache for ZipFileIndex objects. */
 public class ZipFileIndexCache {
 
+    /** Ceylon: the default memory budget of the shared instance, in bytes */
+    public static final long DEFAULT_SHARED_MAX_SIZE = 64L * 1024 * 1024;
+
+    // Ceylon: in access order, so that we evict the least recently used first
     private final Map<File, ZipFileIndex> map =
-            new HashMap<File, ZipFileIndex>();
+            new LinkedHashMap<File, ZipFileIndex>(16, 0.75f, true);
+
+    private final long maxSize;
+    private long size;
+    private long hits;
+    private long misses;
+
+    public ZipFileIndexCache() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Ceylon: a cache which evicts the least recently used indexes once
+     * their estimated size goes over the given number of bytes.
+     */
+    public ZipFileIndexCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
 
     /** Get a shared instance of the cache. */
     
-    // Ceylon: disabled because it makes memory leak and does not detect jars that change
-    // between invocations
+    // Ceylon: this used to be disabled because it leaked memory and did not detect
+    // jars that change between invocations, so the shared instance is now bounded
+    // and checks the size, modification time and end of the archives it returns.
     
-//    private static ZipFileIndexCache sharedInstance;
-//    public synchronized static ZipFileIndexCache getSharedInstance() {
-//        if (sharedInstance == null)
-//            sharedInstance = new ZipFileIndexCache();
-//        return sharedInstance;
-//    }
-
-    /** Get a context-specific instance of a cache. */
+    private static ZipFileIndexCache sharedInstance;
+    public synchronized static ZipFileIndexCache getSharedInstance() {
+        if (sharedInstance == null)
+            sharedInstance = new ZipFileIndexCache(DEFAULT_SHARED_MAX_SIZE);
+        return sharedInstance;
+    }
+
+    /**
+     * Get a context-specific instance of a cache, which is the shared
+     * instance unless one was put in the context.
+     */
     public static ZipFileIndexCache instance(Context context) {
         ZipFileIndexCache instance = context.get(ZipFileIndexCache.class);
         if (instance == null)
-            context.put(ZipFileIndexCache.class, instance = new ZipFileIndexCache());
+            context.put(ZipFileIndexCache.class, instance = getSharedInstance());
         return instance;
     }
 
@@ -81,13 +106,9 @@ public class ZipFileIndexCache {
     public synchronized List<ZipFileIndex> getZipFileIndexes(boolean openedOnly) {
         List<ZipFileIndex> zipFileIndexes = new ArrayList<ZipFileIndex>();
 
-        zipFileIndexes.addAll(map.values());
-
-        if (openedOnly) {
-            for(ZipFileIndex elem : zipFileIndexes) {
-                if (!elem.isOpen()) {
-                    zipFileIndexes.remove(elem);
-                }
+        for (ZipFileIndex elem : map.values()) {
+            if (!openedOnly || elem.isOpen()) {
+                zipFileIndexes.add(elem);
             }
         }
 
@@ -98,12 +119,33 @@ public class ZipFileIndexCache {
             RelativeDirectory symbolFilePrefix,
             boolean useCache, String cacheLocation,
             boolean writeIndex) throws IOException {
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation, writeIndex, false);
+    }
+
+    /**
+     * Ceylon: if mapped is true, a new index reads the zip file entries
+     * through a memory mapping. An index we already have is returned as is.
+     */
+    public synchronized ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean mapped) throws IOException {
         ZipFileIndex zi = getExistingZipIndex(zipFile);
 
-        if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)) {
-            zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
-                    useCache, cacheLocation);
-            map.put(zipFile, zi);
+        if (zi != null && zi.isSameFile()) {
+            hits++;
+            return zi;
+        }
+        misses++;
+        zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
+                useCache, cacheLocation, mapped);
+        put(zipFile, zi);
+        // never evict the index we are returning
+        Iterator<ZipFileIndex> iterator = map.values().iterator();
+        while (size > maxSize && map.size() > 1) {
+            ZipFileIndex eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.estimatedSize;
         }
         return zi;
     }
@@ -112,27 +154,50 @@ public class ZipFileIndexCache {
         return map.get(zipFile);
     }
 
+    private void put(File zipFile, ZipFileIndex zi) {
+        ZipFileIndex old = map.put(zipFile, zi);
+        if (old != null)
+            size -= old.estimatedSize;
+        size += zi.estimatedSize;
+    }
+
     public synchronized void clearCache() {
         map.clear();
+        size = 0;
     }
 
     public synchronized void clearCache(long timeNotUsed) {
-        Iterator<File> cachedFileIterator = map.keySet().iterator();
-        while (cachedFileIterator.hasNext()) {
-            File cachedFile = cachedFileIterator.next();
-            ZipFileIndex cachedZipIndex = map.get(cachedFile);
-            if (cachedZipIndex != null) {
-                long timeToTest = cachedZipIndex.lastReferenceTimeStamp + timeNotUsed;
-                if (timeToTest < cachedZipIndex.lastReferenceTimeStamp || // Overflow...
-                        System.currentTimeMillis() > timeToTest) {
-                    map.remove(cachedFile);
-                }
+        Iterator<ZipFileIndex> cachedIndexIterator = map.values().iterator();
+        while (cachedIndexIterator.hasNext()) {
+            ZipFileIndex cachedZipIndex = cachedIndexIterator.next();
+            long timeToTest = cachedZipIndex.lastReferenceTimeStamp + timeNotUsed;
+            if (timeToTest < cachedZipIndex.lastReferenceTimeStamp || // Overflow...
+                    System.currentTimeMillis() > timeToTest) {
+                cachedIndexIterator.remove();
+                size -= cachedZipIndex.estimatedSize;
             }
         }
     }
 
     public synchronized void removeFromCache(File file) {
-        map.remove(file);
+        ZipFileIndex old = map.remove(file);
+        if (old != null)
+            size -= old.estimatedSize;
+    }
+
+    /** Ceylon: the number of indexes we could reuse */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** Ceylon: the number of indexes we had to build */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /** Ceylon: the estimated memory used by the cached indexes, in bytes */
+    public synchronized long getSize() {
+        return size;
     }
 
     /** Sets already opened list of ZipFileIndexes from an outside client
@@ -147,7 +212,7 @@ public class ZipFileIndexCache {
         }
 
         for (ZipFileIndex zfi : indexes) {
-            map.put(zfi.zipFile, zfi);
+            put(zfi.zipFile, zfi);
         }
     }
 }
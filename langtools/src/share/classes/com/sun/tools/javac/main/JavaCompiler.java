@@ -49,6 +49,7 @@ import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskListener;
 
 import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.ZipFileIndexCache;
 import com.sun.tools.javac.util.*;
 import com.sun.tools.javac.code.*;
 import com.sun.tools.javac.code.Lint.LintCategory;
@@ -882,6 +883,13 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         if (verbose) {
             elapsed_msec = elapsed(start_msec);
             log.printVerbose("total", Long.toString(elapsed_msec));
+            // Ceylon: how many jar indexes we could reuse from earlier compilations
+            ZipFileIndexCache zipFileIndexCache = context.get(ZipFileIndexCache.class);
+            if (zipFileIndexCache != null)
+                log.printVerbose("zip.index.cache",
+                        Long.toString(zipFileIndexCache.getHitCount()),
+                        Long.toString(zipFileIndexCache.getMissCount()),
+                        Long.toString(zipFileIndexCache.getSize() / 1024));
         }
 
         reportDeferredDiagnostics();
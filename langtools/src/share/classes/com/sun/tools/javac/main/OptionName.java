@@ -61,6 +61,8 @@ public enum OptionName {
     CEYLONNOOSGI("-noosgi"),
     CEYLONNOPOM("-nopom"),
     CEYLONPACK200("-pack200"),
+    CEYLONINCREMENTAL("-incremental"),
+    CEYLONAPPENDCAR("-append-car"),
     SOURCEPATH("-sourcepath"),
     CEYLONSOURCEPATH("-src"),
     CEYLONRESOURCEPATH("-res"),
@@ -68,6 +70,7 @@ public enum OptionName {
     CEYLONDISABLEOPT("-disableOptimization"),
     CEYLONDISABLEOPT_CUSTOM("-disableOptimization:{"+optimizations()+"}"),
     CEYLONSUPPRESSWARNINGS("-suppress-warnings"),
+    CEYLONPROFILE("-profile"),
     BOOTCLASSPATH("-bootclasspath"),
     XBOOTCLASSPATH_PREPEND("-Xbootclasspath/p:"),
     XBOOTCLASSPATH_APPEND("-Xbootclasspath/a:"),
@@ -149,6 +149,8 @@ public class RecognizedOptions {
         CEYLONNOOSGI,
         CEYLONNOPOM,
         CEYLONPACK200,
+        CEYLONINCREMENTAL,
+        CEYLONAPPENDCAR,
         SOURCEPATH,
         CEYLONSOURCEPATH,
         CEYLONRESOURCEPATH,
@@ -208,7 +210,8 @@ public class RecognizedOptions {
         BOOTSTRAPCEYLON,
         CEYLONDISABLEOPT,
         CEYLONDISABLEOPT_CUSTOM,
-        CEYLONSUPPRESSWARNINGS);
+        CEYLONSUPPRESSWARNINGS,
+        CEYLONPROFILE);
 
     static Set<OptionName> javacFileManagerOptions = EnumSet.of(
         CLASSPATH,
@@ -223,6 +226,8 @@ public class RecognizedOptions {
         CEYLONNOOSGI,
         CEYLONNOPOM,
         CEYLONPACK200,
+        CEYLONINCREMENTAL,
+        CEYLONAPPENDCAR,
         SOURCEPATH,
         CEYLONSOURCEPATH,
         CEYLONRESOURCEPATH,
@@ -291,7 +296,8 @@ public class RecognizedOptions {
         BOOTSTRAPCEYLON,
         CEYLONDISABLEOPT,
         CEYLONDISABLEOPT_CUSTOM,
-        CEYLONSUPPRESSWARNINGS);
+        CEYLONSUPPRESSWARNINGS,
+        CEYLONPROFILE);
 
     public static Option[] getJavaCompilerOptions(OptionHelper helper) {
         return getOptions(helper, javacOptions);
@@ -399,10 +405,13 @@ public class RecognizedOptions {
         new COption(CEYLONNOOSGI,                                "opt.ceylonnoosgi"),
         new COption(CEYLONNOPOM,                                 "opt.ceylonnopom"),
         new COption(CEYLONPACK200,                               "opt.ceylonpack200"),
+        new COption(CEYLONINCREMENTAL,                           "opt.ceylonincremental"),
+        new COption(CEYLONAPPENDCAR,                             "opt.ceylonappendcar"),
         new COption(CEYLONRESOURCEROOT,     "opt.arg.path",      "opt.ceylonresourceroot"),
         new COption(CEYLONDISABLEOPT,                            "opt.ceylondisableopt"),
         new COption(CEYLONDISABLEOPT_CUSTOM,                     "opt.ceylondisableopt.suboptlist"),
         new COption(CEYLONSUPPRESSWARNINGS, "opt.arg.value",     "opt.ceylonsuppresswarnings"),
+        new COption(CEYLONPROFILE,          "opt.arg.file",      "opt.ceylonprofile"),
         new Option(SOURCEPATH,              "opt.arg.path",      "opt.sourcepath"){
             @Override
             public boolean process(Options options, String option, String arg) {
@@ -29,6 +29,7 @@
 // key: compiler.misc.verbose.checking.attribution
 // key: compiler.misc.verbose.wrote.file
 // key: compiler.misc.verbose.total
+// key: compiler.misc.verbose.zip.index.cache
 // options: -verbose
 // run: backdoor
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+/*
+ * @test
+ * @summary ZipFileIndex reads the same entries through a memory mapping as
+ *          through a RandomAccessFile, and reports how long both take
+ * @run main MappedZipFileIndexRead
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+import com.sun.tools.javac.file.ZipFileIndex;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+public class MappedZipFileIndexRead {
+    public static void main(String... args) throws Exception {
+        new MappedZipFileIndexRead().run(args.length > 0 ? Integer.parseInt(args[0]) : 3);
+    }
+
+    void run(int rounds) throws Exception {
+        File f = new File(System.getProperty("java.home"));
+        if (!f.getName().equals("jre"))
+            f = new File(f, "jre");
+        File rt_jar = new File(new File(f, "lib"), "rt.jar");
+
+        // separate caches so we get one index of each kind
+        ZipFileIndex plain = new ZipFileIndexCache().getZipFileIndex(rt_jar, null, false, null, false, false);
+        ZipFileIndex mapped = new ZipFileIndexCache().getZipFileIndex(rt_jar, null, false, null, false, true);
+
+        List<RelativeFile> files = new ArrayList<RelativeFile>();
+        for (RelativeDirectory dir : plain.getAllDirectories()) {
+            for (String name : plain.getFiles(dir)) {
+                files.add(new RelativeFile(dir, name));
+            }
+        }
+
+        for (RelativeFile file : files) {
+            if (!Arrays.equals(plain.read(file), mapped.read(file)))
+                throw new Exception("Different contents for " + file.getPath());
+        }
+
+        for (int i = 0; i < rounds; i++) {
+            System.err.println("RandomAccessFile: " + time(plain, files) + "ms, "
+                    + "mapped: " + time(mapped, files) + "ms, "
+                    + files.size() + " entries");
+        }
+        plain.close();
+        mapped.close();
+    }
+
+    long time(ZipFileIndex index, List<RelativeFile> files) throws Exception {
+        long start = System.nanoTime();
+        for (RelativeFile file : files) {
+            index.read(file);
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
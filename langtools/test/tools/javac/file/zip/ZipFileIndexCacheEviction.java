@@ -0,0 +1,107 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+/*
+ * @test
+ * @summary A bounded ZipFileIndexCache evicts the least recently used
+ *          indexes once their size goes over its budget, but never the
+ *          index it returns
+ * @run main ZipFileIndexCacheEviction
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+public class ZipFileIndexCacheEviction {
+    public static void main(String... args) throws Exception {
+        new ZipFileIndexCacheEviction().run();
+    }
+
+    void run() throws Exception {
+        File a = writeJar("a.jar");
+        File b = writeJar("b.jar");
+        File c = writeJar("c.jar");
+
+        // the jars have the same entries, so their indexes have the same size
+        ZipFileIndexCache sizing = new ZipFileIndexCache();
+        sizing.getZipFileIndex(a, null, false, null, false).close();
+        long indexSize = sizing.getSize();
+        check(indexSize > 0, "size not tracked");
+
+        ZipFileIndexCache cache = new ZipFileIndexCache(2 * indexSize + indexSize / 2);
+        get(cache, a);
+        get(cache, b);
+        get(cache, c);
+        checkCached(cache, false, a);
+        checkCached(cache, true, b, c);
+        check(cache.getSize() == 2 * indexSize, "unexpected size " + cache.getSize());
+
+        // using b makes c the least recently used one
+        get(cache, b);
+        get(cache, a);
+        checkCached(cache, false, c);
+        checkCached(cache, true, a, b);
+        check(cache.getHitCount() == 1 && cache.getMissCount() == 4,
+                "unexpected counts: " + cache.getHitCount() + "/" + cache.getMissCount());
+
+        // an index over the budget on its own is still kept
+        ZipFileIndexCache tiny = new ZipFileIndexCache(1);
+        get(tiny, a);
+        checkCached(tiny, true, a);
+        get(tiny, b);
+        checkCached(tiny, false, a);
+        checkCached(tiny, true, b);
+
+        cache.clearCache();
+        check(cache.getSize() == 0, "size not reset");
+    }
+
+    void get(ZipFileIndexCache cache, File jar) throws Exception {
+        cache.getZipFileIndex(jar, null, false, null, false).close();
+    }
+
+    void checkCached(ZipFileIndexCache cache, boolean cached, File... jars) {
+        for (File jar : jars) {
+            check((cache.getExistingZipIndex(jar) != null) == cached,
+                    jar + (cached ? " was evicted" : " was not evicted"));
+        }
+    }
+
+    File writeJar(String name) throws Exception {
+        File jar = new File(name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < 100; i++) {
+                out.putNextEntry(new ZipEntry("p/C" + i + ".class"));
+                out.write(i);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
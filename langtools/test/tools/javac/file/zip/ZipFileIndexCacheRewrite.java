@@ -0,0 +1,88 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+/*
+ * @test
+ * @summary ZipFileIndexCache reuses the index of an unchanged jar, and
+ *          builds a new one when the jar is rewritten in place, even if
+ *          its modification time stays the same
+ * @run main ZipFileIndexCacheRewrite
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+import com.sun.tools.javac.file.ZipFileIndex;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+public class ZipFileIndexCacheRewrite {
+    public static void main(String... args) throws Exception {
+        new ZipFileIndexCacheRewrite().run();
+    }
+
+    void run() throws Exception {
+        File jar = new File("rewrite.jar");
+        writeJar(jar, "p/A.class");
+        long lastModified = jar.lastModified();
+
+        ZipFileIndexCache cache = new ZipFileIndexCache();
+        ZipFileIndex first = cache.getZipFileIndex(jar, null, false, null, false);
+        check(first.contains(new RelativeFile("p/A.class")), "missing p/A.class");
+
+        ZipFileIndex again = cache.getZipFileIndex(jar, null, false, null, false);
+        check(again == first, "index of an unchanged jar was rebuilt");
+        check(cache.getHitCount() == 1 && cache.getMissCount() == 1,
+                "unexpected counts: " + cache.getHitCount() + "/" + cache.getMissCount());
+
+        // a build tool can rewrite a jar within the same second
+        writeJar(jar, "p/A.class", "p/B.class");
+        check(jar.setLastModified(lastModified), "could not reset the modification time");
+
+        ZipFileIndex rebuilt = cache.getZipFileIndex(jar, null, false, null, false);
+        check(rebuilt != first, "index of a rewritten jar was reused");
+        check(rebuilt.contains(new RelativeFile("p/B.class")), "missing p/B.class");
+        check(cache.getHitCount() == 1 && cache.getMissCount() == 2,
+                "unexpected counts: " + cache.getHitCount() + "/" + cache.getMissCount());
+        check(cache.getExistingZipIndex(jar) == rebuilt, "stale index still cached");
+        check(cache.getZipFileIndexes().size() == 1, "stale index still cached");
+        check(cache.getSize() > 0, "size not tracked");
+
+        first.close();
+        rebuilt.close();
+    }
+
+    void writeJar(File jar, String... names) throws Exception {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
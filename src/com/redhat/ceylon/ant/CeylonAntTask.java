@@ -179,10 +179,27 @@ public abstract class CeylonAntTask extends Task {
      * @param cmd The commandline
      */
     protected void executeCommandline(Commandline cmd) {
+        try {
+            int exitValue = runCommandline(cmd, getFork());
+            handleExit(cmd, exitValue);
+        }catch(BuildException e){
+            // let build exceptions through, since we throw them ourselves in handleExit!
+            throw e;
+        } catch (Throwable e) {
+            throw new BuildException("Error running Ceylon " + toolName + " tool (an exception was thrown, run ant with -v parameter to see the exception)", e, getLocation());
+        }
+    }
+
+    /**
+     * Runs a Commandline, either in a new process or in this JVM
+     * @param cmd The commandline
+     * @param fork Whether to spawn a new process
+     * @return The exit value of the tool
+     */
+    protected int runCommandline(Commandline cmd, boolean fork) throws Throwable {
         File tmpFile = null;
         try {
-            int exitValue;
-            if(getFork()){
+            if(fork){
                 log("Spawning new process: " + Arrays.toString(cmd.getCommandline()), Project.MSG_VERBOSE);
                 
                 String[] args = cmd.getCommandline();
@@ -210,22 +227,11 @@ public abstract class CeylonAntTask extends Task {
                 exe.setWorkingDirectory(getProject().getBaseDir());
                 exe.setCommandline(args);
                 exe.execute();
-                exitValue = exe.getExitValue();
+                return exe.getExitValue();
             }else{
                 log("Launching Launcher in this JVM: " + Arrays.toString(cmd.getArguments()), Project.MSG_VERBOSE);
-                exitValue = Launcher.runInJava7Checked(getLoader(), cmd.getArguments());
-            }
-            if (exitValue != 0) {
-                String message = formatFailureMessage(cmd);
-                exitHandler.handleExit(this, exitValue, message);
-            }else{
-                exitHandler.handleExit(this, exitValue, null);
+                return Launcher.runInJava7Checked(getLoader(), cmd.getArguments());
             }
-        }catch(BuildException e){
-            // let build exceptions through, since we throw them ourselves in handleExit!
-            throw e;
-        } catch (Throwable e) {
-            throw new BuildException("Error running Ceylon " + toolName + " tool (an exception was thrown, run ant with -v parameter to see the exception)", e, getLocation());
         } finally {
             if (tmpFile != null) {
                 tmpFile.delete();
@@ -233,6 +239,27 @@ public abstract class CeylonAntTask extends Task {
         }
     }
 
+    /**
+     * Sets the result and error properties according to the exit value of
+     * the given Commandline, and fails the build if it failed and we're
+     * supposed to fail on errors
+     */
+    protected void handleExit(Commandline cmd, int exitValue) {
+        if (exitValue != 0) {
+            String message = formatFailureMessage(cmd);
+            exitHandler.handleExit(this, exitValue, message);
+        }else{
+            exitHandler.handleExit(this, exitValue, null);
+        }
+    }
+
+    /**
+     * Returns the name of the ceylon tool which this task executes.
+     */
+    protected String getToolName() {
+        return toolName;
+    }
+
     /**
      * For now this is not a setting, because we must have it for ceylon-run and it's kinda useless for the
      * other tools.
@@ -32,9 +32,18 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -103,6 +112,7 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
     private Boolean pack200;
     private List<SuppressWarning> suppressWarnings = new ArrayList<SuppressWarning>(0);
     private boolean suppressAllWarnings = false;
+    private int threads = 1;
     
     private List<File> compileList = new ArrayList<File>(2);
     private Set<Module> modules = null;
@@ -144,6 +154,20 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
         this.pack200 = pack200;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of modules which can be compiled at the same time.
+     * When greater than one, each module is compiled by its own forked 
+     * compiler as soon as the modules it imports have been compiled, and 
+     * ends up in the output repository when it's done.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void addConfiguredSuppressWarning(SuppressWarning sw) {
         this.suppressWarnings.add(sw);
         if (sw.value == null || sw.value.isEmpty()) {
@@ -250,6 +274,20 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
                 && this.files == null) {
             throw new BuildException("You must specify a <module>, <moduleset> and/or <files>");
         }
+        if (threads < 1) {
+            throw new BuildException("threads must be at least 1");
+        }
+    }
+    
+    /**
+     * Whether the modules get compiled separately, in parallel. Source 
+     * files are always compiled together with the modules, so we don't 
+     * compile in parallel when we have any.
+     */
+    private boolean isParallel() {
+        return threads > 1
+                && compileList.isEmpty()
+                && modules.size() > 1;
     }
     
     @Override
@@ -414,6 +452,7 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
             }
         };
         
+        setLazyHelper(lazyTask);
         if (lazyTask.filterFiles(compileList) 
                 && lazyTask.filterModules(modules)) {
             log("Everything's up to date");
@@ -437,6 +476,21 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
         }
     }
     
+    @Override
+    public String getFingerprintOptions() {
+        StringBuilder sb = new StringBuilder(super.getFingerprintOptions());
+        for (JavacOption opt : javacOptions) {
+            sb.append(" javac=").append(opt.key).append(':').append(opt.value);
+        }
+        sb.append(" noOsgi=").append(noOsgi);
+        sb.append(" noPom=").append(noPom);
+        sb.append(" pack200=").append(pack200);
+        for (SuppressWarning sw : suppressWarnings) {
+            sb.append(" suppressWarning=").append(sw.value);
+        }
+        return sb.toString();
+    }
+    
     /**
      * Perform the compilation.
      */
@@ -483,10 +537,105 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
             log("Adding source file: "+file.getAbsolutePath(), Project.MSG_VERBOSE);
             cmd.createArgument().setValue(file.getAbsolutePath());
         }
-        // modules to compile
-        for (Module module : modules) {
-            log("Adding module: "+module, Project.MSG_VERBOSE);
-            cmd.createArgument().setValue(module.toVersionlessSpec());
+        // modules to compile, unless we compile each of them separately
+        if (!isParallel()) {
+            for (Module module : modules) {
+                log("Adding module: "+module, Project.MSG_VERBOSE);
+                cmd.createArgument().setValue(module.toVersionlessSpec());
+            }
+        }
+    }
+    
+    @Override
+    protected void executeCommandline(Commandline cmd) {
+        if (isParallel()) {
+            executeInParallel(cmd);
+        } else {
+            super.executeCommandline(cmd);
+        }
+    }
+    
+    /**
+     * Compiles each module with its own forked compiler, with at most 
+     * {@link #threads} compilers running at the same time. A module is 
+     * only compiled once all the modules it imports have been, so that
+     * it can find them in the output repository. Once a module fails 
+     * to compile, we wait for the running compilers but don't start any 
+     * new one.
+     * @param cmd The commandline, without the modules to compile
+     */
+    private void executeInParallel(Commandline cmd) {
+        ModuleGraph graph = new ModuleGraph(this, modules);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, modules.size()));
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        Map<Future<Integer>, ModuleCompilation> running = new HashMap<Future<Integer>, ModuleCompilation>();
+        ModuleCompilation failed = null;
+        int failedExitValue = 0;
+        try {
+            while (true) {
+                if (failed == null) {
+                    for (Module module : graph.takeReady()) {
+                        log("Compiling module: "+module, Project.MSG_VERBOSE);
+                        Commandline moduleCmd = (Commandline)cmd.clone();
+                        moduleCmd.createArgument().setValue(module.toVersionlessSpec());
+                        ModuleCompilation compilation = new ModuleCompilation(module, moduleCmd);
+                        running.put(completionService.submit(compilation), compilation);
+                    }
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+                Future<Integer> future = completionService.take();
+                ModuleCompilation compilation = running.remove(future);
+                int exitValue = future.get();
+                if (exitValue == 0) {
+                    log("Compiled module: "+compilation.module, Project.MSG_VERBOSE);
+                    graph.done(compilation.module);
+                } else if (failed == null) {
+                    failed = compilation;
+                    failedExitValue = exitValue;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while running Ceylon " + getToolName() + " tool", e, getLocation());
+        } catch (ExecutionException e) {
+            throw new BuildException("Error running Ceylon " + getToolName() + " tool (an exception was thrown, run ant with -v parameter to see the exception)", e.getCause(), getLocation());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failed != null) {
+            handleExit(failed.cmd, failedExitValue);
+            return;
+        }
+        List<Module> remaining = graph.getRemaining();
+        if (!remaining.isEmpty()) {
+            throw new BuildException("Circular imports between modules " + remaining, getLocation());
+        }
+        handleExit(cmd, 0);
+    }
+    
+    private class ModuleCompilation implements Callable<Integer> {
+        final Module module;
+        final Commandline cmd;
+        
+        ModuleCompilation(Module module, Commandline cmd) {
+            this.module = module;
+            this.cmd = cmd;
+        }
+        
+        @Override
+        public Integer call() throws Exception {
+            try {
+                // the launcher isn't safe to use from several threads
+                return runCommandline(cmd, true);
+            } catch (Exception e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -196,8 +196,15 @@ public class CeylonCompileJsAntTask extends LazyCeylonAntTask {
                     return Long.MAX_VALUE;
                 }
             }
+            
+            @Override
+            protected File getFingerprintFile(Module module) {
+                // shares the directory with the JVM compiler
+                return new File(getArtifactDir(module), module.getName() + "-" + module.getVersion() + ".js.fingerprint");
+            }
         };
 
+        setLazyHelper(lazyTask);
         if (lazyTask.filterFiles(compileList) 
                 && lazyTask.filterModules(modules)) {
             log("Everything's up to date");
@@ -221,6 +228,18 @@ public class CeylonCompileJsAntTask extends LazyCeylonAntTask {
         }
     }
     
+    @Override
+    public String getFingerprintOptions() {
+        StringBuilder sb = new StringBuilder(super.getFingerprintOptions());
+        sb.append(" optimize=").append(optimize);
+        sb.append(" modulify=").append(modulify);
+        sb.append(" gensrc=").append(gensrc);
+        for (SuppressWarning sw : suppressWarnings) {
+            sb.append(" suppressWarning=").append(sw.value);
+        }
+        return sb.toString();
+    }
+    
     @Override
     protected void completeCommandline(Commandline cmd) {
         super.completeCommandline(cmd);
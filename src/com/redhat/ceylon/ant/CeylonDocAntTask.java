@@ -172,6 +172,7 @@ public class CeylonDocAntTask extends LazyCeylonAntTask {
                 return Long.MAX_VALUE;
             }
         };
+        setLazyHelper(lazyTask);
         if (lazyTask.filterModules(moduleset.getModules())) {
             log("Everything's up to date");
             return null;
@@ -180,6 +181,19 @@ public class CeylonDocAntTask extends LazyCeylonAntTask {
         return super.buildCommandline();
     }
     
+    @Override
+    public String getFingerprintOptions() {
+        StringBuilder sb = new StringBuilder(super.getFingerprintOptions());
+        sb.append(" includeSourceCode=").append(includeSourceCode);
+        sb.append(" includeNonShared=").append(includeNonShared);
+        sb.append(" ignoreMissingDoc=").append(ignoreMissingDoc);
+        sb.append(" ignoreBrokenLink=").append(ignoreBrokenLink);
+        for (Link link : linkset.getLinks()) {
+            sb.append(" link=").append(link);
+        }
+        return sb.toString();
+    }
+    
     protected void completeCommandline(Commandline cmd) {
         super.completeCommandline(cmd);
         
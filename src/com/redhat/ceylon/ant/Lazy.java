@@ -44,4 +44,8 @@ public interface Lazy {
     String getOut();
 
     ClassLoader getClassLoader() throws ClassLoaderSetupException;
+
+    boolean getFingerprint();
+
+    String getFingerprintOptions();
 }
@@ -44,6 +44,8 @@ abstract class LazyCeylonAntTask extends OutputRepoUsingCeylonAntTask implements
     private Path src;
     private String encoding;
     private Boolean noMtimeCheck = false;
+    private Boolean fingerprint = false;
+    private LazyHelper lazyHelper;
     
     protected LazyCeylonAntTask(String toolName) {
         super(toolName);
@@ -102,6 +104,45 @@ abstract class LazyCeylonAntTask extends OutputRepoUsingCeylonAntTask implements
     public boolean getNoMtimeCheck() {
         return noMtimeCheck;
     }
+    
+    /**
+     * Sets whether modules are considered up to date when the hash of their
+     * sources, resources, the task options and the artifacts of the 
+     * modules they import is the same as when they were last processed, 
+     * rather than by comparing file modification times
+     * @param fingerprint
+     */
+    public void setFingerprint(Boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    public boolean getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Returns the options which affect the output of the tool, as part of 
+     * the module fingerprints. Subclasses add their own options.
+     */
+    public String getFingerprintOptions() {
+        return "encoding=" + encoding;
+    }
+    
+    /**
+     * Sets the helper which decided which modules need to be processed, so
+     * that it can record their fingerprints once they have been.
+     */
+    protected void setLazyHelper(LazyHelper lazyHelper) {
+        this.lazyHelper = lazyHelper;
+    }
+    
+    @Override
+    protected void handleExit(Commandline cmd, int exitValue) {
+        if (exitValue == 0 && lazyHelper != null) {
+            lazyHelper.writeFingerprints();
+        }
+        super.handleExit(cmd, exitValue);
+    }
 
     @Override
     protected void completeCommandline(Commandline cmd) {
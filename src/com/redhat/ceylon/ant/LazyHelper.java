@@ -19,14 +19,33 @@
  */
 package com.redhat.ceylon.ant;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.Project;
 
@@ -37,12 +56,27 @@ import com.redhat.ceylon.launcher.ClassLoaderSetupException;
 /**
  * Encapsulates file modification time logic for figuring out whether a tool 
  * execution is actually required: Are any sources newer than the output.
+ * 
+ * When the task asks for fingerprints, we first compare the fingerprint 
+ * of each module (a hash of its sources, resources, the task options and 
+ * the checksums of the artifacts of the modules it imports) with the one
+ * we recorded next to its artifacts, and only fall back to the 
+ * modification times when there's no recorded fingerprint.
  * @author tom
  */
 abstract class LazyHelper {
     
+    private static final String UTF8 = "UTF-8";
+    
     private final Lazy task;
     
+    /** 
+     * The modules whose fingerprint we need to record once they've been 
+     * processed, with the fingerprint of their sources and options as they 
+     * were before processing them
+     */
+    private final Map<Module, String> fingerprintedModules = new LinkedHashMap<Module, String>();
+    
     public LazyHelper(Lazy task) {
         this.task = task;
     }
@@ -100,15 +134,39 @@ abstract class LazyHelper {
                 task.log("Module " + m.getName() + " could not be found (or unable to determine version and hence timestamp)", Project.MSG_VERBOSE);
                 continue;
             }
-            long newest = Math.max(newestFile(task.getSrc(), module.toDir()), newestFile(task.getResource(), module.toDir()));
             File outModuleDir = getArtifactDir(module);
             long oldest = oldestOutputArtifact(Long.MAX_VALUE, outModuleDir);
             task.log("Oldest file in " + outModuleDir + " " + new Date(oldest), Project.MSG_DEBUG);
-            if (newest != Long.MIN_VALUE
-                    && oldest != Long.MAX_VALUE
-                    && newest < oldest) {
+            String sourceFingerprint = null;
+            String fingerprint = null;
+            String recordedFingerprint = null;
+            if (task.getFingerprint()) {
+                sourceFingerprint = sourceFingerprint(module);
+                fingerprint = fingerprint(module, sourceFingerprint);
+                recordedFingerprint = readFingerprint(module);
+            }
+            boolean upToDate;
+            if (recordedFingerprint != null) {
+                upToDate = oldest != Long.MAX_VALUE
+                        && recordedFingerprint.equals(fingerprint);
+                if (!upToDate) {
+                    task.log("Fingerprint of " + module + " changed", Project.MSG_VERBOSE);
+                }
+            } else {
+                long newest = Math.max(newestFile(task.getSrc(), module.toDir()), newestFile(task.getResource(), module.toDir()));
+                upToDate = newest != Long.MIN_VALUE
+                        && oldest != Long.MAX_VALUE
+                        && newest < oldest;
+                if (upToDate && fingerprint != null) {
+                    // start using fingerprints right away
+                    writeFingerprint(module, fingerprint);
+                }
+            }
+            if (upToDate) {
                 task.log("No need to compile " + module + ", it's up to date");
                 iterator.remove();
+            } else if (fingerprint != null) {
+                fingerprintedModules.put(module, sourceFingerprint);
             }
         }
         return modules.size() == 0;
@@ -177,6 +235,250 @@ abstract class LazyHelper {
 
     protected abstract long getArtifactFileTime(Module module, File file);
 
+    /**
+     * Returns the file where we record the fingerprint of the given module
+     */
+    protected File getFingerprintFile(Module module) {
+        return new File(getArtifactDir(module), module.getName() + "-" + module.getVersion() + ".fingerprint");
+    }
+    
+    /**
+     * Records the fingerprints of the modules which were not filtered out 
+     * by {@link #filterModules(Collection)}, once the task has processed 
+     * them successfully. We record what the sources were before processing
+     * them, so that a file edited in the meantime gets processed again next
+     * time, but the imports as they are now, since the task may just have 
+     * processed them too.
+     */
+    protected void writeFingerprints() {
+        for (Map.Entry<Module, String> entry : fingerprintedModules.entrySet()) {
+            Module module = entry.getKey();
+            if (getArtifactDir(module).isDirectory()) {
+                writeFingerprint(module, fingerprint(module, entry.getValue()));
+            }
+        }
+        fingerprintedModules.clear();
+    }
+    
+    private String readFingerprint(Module module) {
+        File file = getFingerprintFile(module);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return readFile(file);
+        } catch (IOException e) {
+            task.log("Could not read the fingerprint of " + module + " from " + file + ": " + e.getMessage(), Project.MSG_VERBOSE);
+            return null;
+        }
+    }
+    
+    private void writeFingerprint(Module module, String fingerprint) {
+        File file = getFingerprintFile(module);
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write((fingerprint + "\n").getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            task.log("Could not write the fingerprint of " + module + " to " + file + ": " + e.getMessage(), Project.MSG_VERBOSE);
+        }
+    }
+    
+    /**
+     * Computes the fingerprint of the given module from the fingerprint of
+     * its sources and the artifacts of the modules it imports.
+     */
+    private String fingerprint(Module module, String sourceFingerprint) {
+        MessageDigest digest = newDigest();
+        update(digest, "sources " + sourceFingerprint + "\n");
+        for (Module imported : findModuleImports(module.getName())) {
+            update(digest, "import " + imported + " " + getImportFingerprint(imported) + "\n");
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Computes the fingerprint of the sources and resources of the given 
+     * module and of the task options, hashing its files in parallel.
+     */
+    private String sourceFingerprint(Module module) {
+        MessageDigest digest = newDigest();
+        update(digest, "options " + task.getFingerprintOptions() + "\n");
+        List<File> files = new ArrayList<File>();
+        List<String> paths = new ArrayList<String>();
+        List<File> roots = new ArrayList<File>(task.getSrc());
+        roots.addAll(task.getResource());
+        for (File root : roots) {
+            File moduleDir = new File(root, module.toDir().getPath());
+            int prefix = root.getPath().length() + 1;
+            for (File file : listFiles(moduleDir)) {
+                files.add(file);
+                paths.add(file.getPath().substring(prefix).replace(File.separatorChar, '/'));
+            }
+        }
+        List<String> hashes = hashFiles(files);
+        for (int i = 0; i < files.size(); i++) {
+            update(digest, "file " + paths.get(i) + " " + hashes.get(i) + "\n");
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Returns the checksums of the artifacts of the given imported module 
+     * found in the output repository, or an empty string if it's not 
+     * there.
+     */
+    private String getImportFingerprint(Module imported) {
+        if (imported.getVersion() == null) {
+            return "";
+        }
+        File[] files = getArtifactDir(imported).listFiles();
+        if (files == null) {
+            return "";
+        }
+        Arrays.sort(files);
+        StringBuilder sb = new StringBuilder();
+        for (File file : files) {
+            if (file.isFile()
+                    && file.getName().endsWith(".sha1")
+                    && getArtifactFilter().accept(file)) {
+                try {
+                    sb.append(readFile(file)).append(' ');
+                } catch (IOException e) {
+                    // treat it as missing
+                }
+            }
+        }
+        return sb.toString();
+    }
+    
+    /** Lists the files in the given directory and its subdirectories, sorted by path */
+    private static List<File> listFiles(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(children);
+        List<File> result = new ArrayList<File>();
+        for (File child : children) {
+            if (child.isDirectory()) {
+                result.addAll(listFiles(child));
+            } else {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+    
+    /** Hashes the given files in parallel, returning the hashes in the same order */
+    private List<String> hashFiles(List<File> files) {
+        List<String> result = new ArrayList<String>(files.size());
+        if (files.isEmpty()) {
+            return result;
+        }
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return hashFile(file);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException e) {
+                    // we can't read it, so it's always different
+                    task.log("Could not read " + files.get(result.size()) + ": " + e.getCause(), Project.MSG_VERBOSE);
+                    result.add("unreadable " + System.nanoTime());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+    
+    private static String hashFile(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private static void update(MessageDigest digest, String s) {
+        try {
+            digest.update(s.getBytes(UTF8));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /** Reads the given small text file, trimmed */
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), UTF8).trim();
+        } finally {
+            in.close();
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+    
+    private ModuleDescriptorReader findModuleDescriptor(String moduleName) {
+        for (File src : task.getSrc()) {
+            try{
+                return new ModuleDescriptorReader(task.getClassLoader(), moduleName, src);
+            }catch(ModuleDescriptorReader.NoSuchModuleException x){
+                continue;
+            }catch(ClassLoaderSetupException x){
+                // not like we can try again
+                return null;
+            }
+        }
+        return null;
+    }
+    
     private Module findModule(String moduleName) {
         for (File src : task.getSrc()) {
             try{
@@ -194,6 +496,17 @@ abstract class LazyHelper {
         return null;
     }
     
+    private List<Module> findModuleImports(String moduleName) {
+        List<Module> result = new ArrayList<Module>();
+        ModuleDescriptorReader mdr = findModuleDescriptor(moduleName);
+        if (mdr != null) {
+            for (Object[] imp : mdr.getModuleImports()) {
+                result.add(new Module((String)imp[0], (String)imp[1]));
+            }
+        }
+        return result;
+    }
+    
     private Module inferModule(File file) {
         if (file.exists()) {
             for (File src : task.getSrc()) {
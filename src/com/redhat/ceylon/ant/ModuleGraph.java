@@ -0,0 +1,122 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.ant;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.tools.ant.Project;
+
+import com.redhat.ceylon.launcher.ClassLoaderSetupException;
+
+/**
+ * The imports between a set of source modules, as read from their module
+ * descriptors, used to figure out which modules can be compiled once the
+ * modules they import have been compiled. Imports of modules which are
+ * not part of the set are ignored, since they have to come from a
+ * repository anyway.
+ */
+class ModuleGraph {
+
+    private final Map<String, Module> modules = new LinkedHashMap<String, Module>();
+    /** The modules of the set imported by each module which weren't compiled yet */
+    private final Map<String, Set<String>> pendingImports = new LinkedHashMap<String, Set<String>>();
+    private final Set<String> started = new LinkedHashSet<String>();
+
+    public ModuleGraph(Lazy task, Collection<Module> modules) {
+        for (Module module : modules) {
+            this.modules.put(module.getName(), module);
+        }
+        for (Module module : modules) {
+            Set<String> imports = new LinkedHashSet<String>();
+            for (String imported : readImports(task, module.getName())) {
+                if (this.modules.containsKey(imported)
+                        && !imported.equals(module.getName())) {
+                    imports.add(imported);
+                }
+            }
+            task.log("Module " + module.getName() + " imports " + imports, Project.MSG_DEBUG);
+            pendingImports.put(module.getName(), imports);
+        }
+    }
+
+    private static List<String> readImports(Lazy task, String moduleName) {
+        List<String> result = new ArrayList<String>();
+        for (File src : task.getSrc()) {
+            try{
+                ModuleDescriptorReader mdr = new ModuleDescriptorReader(task.getClassLoader(), moduleName, src);
+                for (Object[] imp : mdr.getModuleImports()) {
+                    result.add((String)imp[0]);
+                }
+                break;
+            }catch(ModuleDescriptorReader.NoSuchModuleException x){
+                continue;
+            }catch(ClassLoaderSetupException x){
+                // not like we can try again
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the modules which weren't started yet and whose imports have
+     * all been compiled, and marks them as started.
+     */
+    public List<Module> takeReady() {
+        List<Module> result = new ArrayList<Module>();
+        for (Map.Entry<String, Set<String>> entry : pendingImports.entrySet()) {
+            if (entry.getValue().isEmpty()
+                    && started.add(entry.getKey())) {
+                result.add(modules.get(entry.getKey()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the given module has been compiled, so that the modules
+     * importing it can be compiled.
+     */
+    public void done(Module module) {
+        for (Set<String> imports : pendingImports.values()) {
+            imports.remove(module.getName());
+        }
+    }
+
+    /**
+     * Returns the modules which weren't started yet.
+     */
+    public List<Module> getRemaining() {
+        List<Module> result = new ArrayList<Module>();
+        for (Module module : modules.values()) {
+            if (!started.contains(module.getName())) {
+                result.add(module);
+            }
+        }
+        return result;
+    }
+}
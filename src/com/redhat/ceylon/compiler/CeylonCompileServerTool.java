@@ -0,0 +1,56 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler;
+
+import java.io.IOException;
+
+import com.redhat.ceylon.common.tool.CeylonBaseTool;
+import com.redhat.ceylon.common.tool.Description;
+import com.redhat.ceylon.common.tool.OptionArgument;
+import com.redhat.ceylon.common.tool.Summary;
+import com.redhat.ceylon.common.tools.CeylonTool;
+import com.redhat.ceylon.compiler.java.launcher.CompileServer;
+
+@Summary("Starts a compile server, which keeps a warm compiler between builds.")
+@Description("The server runs until it is killed, compiling the modules and files " +
+        "sent to it by `ceylon compile --server <port>`." +
+        "\n\n" +
+        "It only listens on the loopback interface, and only accepts the compilations " +
+        "of the users who can read the token it writes to " +
+        "`~/.ceylon/compile-server-<port>.token`.")
+public class CeylonCompileServerTool extends CeylonBaseTool {
+
+    private int port = CompileServer.DEFAULT_PORT;
+
+    @OptionArgument(argumentName="port")
+    @Description("The local port to listen on (default: `" + CompileServer.DEFAULT_PORT + "`).")
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void initialize(CeylonTool mainTool) {
+    }
+
+    @Override
+    public void run() throws IOException {
+        new CompileServer(port).run();
+    }
+}
@@ -47,6 +47,7 @@ import com.redhat.ceylon.common.tool.ToolUsageError;
 import com.redhat.ceylon.common.tools.CeylonTool;
 import com.redhat.ceylon.common.tools.ModuleWildcardsHelper;
 import com.redhat.ceylon.common.tools.SourceArgumentsResolver;
+import com.redhat.ceylon.compiler.java.launcher.CompileServer;
 import com.redhat.ceylon.compiler.java.launcher.Main;
 import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
@@ -172,6 +173,10 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
     private boolean noOsgi = DefaultToolOptions.getCompilerNoOsgi();
     private boolean noPom = DefaultToolOptions.getCompilerNoPom();
     private boolean pack200 = DefaultToolOptions.getCompilerPack200();
+    private boolean incremental;
+    private boolean appendCar;
+    private Integer server;
+    private File profile;
     private EnumSet<Warning> suppressWarnings = EnumUtil.enumsFromStrings(Warning.class, DefaultToolOptions.getCompilerSuppressWarnings());
     private boolean flatClasspath;
     private boolean autoExportMavenDependencies;
@@ -211,6 +216,37 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         this.pack200 = pack200;
     }
 
+    @Option(longName="incremental")
+    @Description("Only compile the source files which changed since the previous compilation, " +
+            "and the source files depending on declarations whose signature changed.")
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @Option(longName="append-car")
+    @Description("Update existing car files in place, only rewriting them from the first entry " +
+            "which changed, instead of rewriting them completely.")
+    public void setAppendCar(boolean appendCar) {
+        this.appendCar = appendCar;
+    }
+
+    @OptionArgument(argumentName="port")
+    @Description("Sends the compilation to a compile server listening on the given local port, " +
+            "which saves the cost of starting and warming up a new compiler. " +
+            "The server is started with `ceylon compile-server --port <port>`, " +
+            "and only accepts the compilations of the users who can read the token it writes to " +
+            "`~/.ceylon/compile-server-<port>.token`.")
+    public void setServer(int server) {
+        this.server = server;
+    }
+
+    @OptionArgument(argumentName="file")
+    @Description("Writes the time, heap and garbage collector activity of each compiler " +
+            "phase, and the code generation time of each source file, to the given file, as JSON.")
+    public void setProfile(File profile) {
+        this.profile = profile;
+    }
+
     @OptionArgument(shortName='s', longName="src", argumentName="dirs")
     @ParsedBy(StandardArgumentParsers.PathArgumentParser.class)
     @Description("Path to directory containing source files. " +
@@ -334,6 +370,11 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         
         arguments = new ArrayList<>();
         
+        if (server != null && cwd == null) {
+            // the server does not share our working directory
+            cwd = new File(System.getProperty("user.dir"));
+        }
+        
         if (cwd != null) {
             arguments.add("-cwd");
             arguments.add(cwd.getPath());
@@ -392,6 +433,19 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         if (pack200) {
             arguments.add("-pack200");
         }
+
+        if (incremental) {
+            arguments.add("-incremental");
+        }
+
+        if (appendCar) {
+            arguments.add("-append-car");
+        }
+        
+        if (profile != null) {
+            arguments.add("-profile");
+            arguments.add(applyCwd(profile).getAbsolutePath());
+        }
         
         if (verbose != null) {
             if (verbose.isEmpty()) {
@@ -469,7 +523,14 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         
         validateSourceArguments(expandedModulesOrFiles);
         
-        arguments.addAll(expandedModulesOrFiles);
+        if (server != null) {
+            for (String moduleOrFile : expandedModulesOrFiles) {
+                File file = applyCwd(new File(moduleOrFile));
+                arguments.add(file.isFile() ? file.getAbsolutePath() : moduleOrFile);
+            }
+        } else {
+            arguments.addAll(expandedModulesOrFiles);
+        }
         
         if (verbose != null) {
             System.out.println(arguments);
@@ -500,8 +561,15 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
      */
     @Override
     public void run() throws IOException {
-        int result = compiler.compile(arguments.toArray(new String[arguments.size()]));
-        handleExitCode(result, compiler.exitState);
+        String[] args = arguments.toArray(new String[arguments.size()]);
+        if (server != null) {
+            CompileServer.Client client = new CompileServer.Client(server);
+            int result = client.compile(args, new PrintWriter(System.err, true));
+            handleExitCode(result, client.exitState);
+        } else {
+            int result = compiler.compile(args);
+            handleExitCode(result, compiler.exitState);
+        }
     }
 
     private void handleExitCode(
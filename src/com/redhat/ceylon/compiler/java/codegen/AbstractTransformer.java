@@ -148,6 +148,13 @@ public abstract class AbstractTransformer implements Transformation {
     protected Map<String, Long> omittedModelAnnotations;
 
     public boolean simpleAnnotationModels;
+    
+    /**
+     * Whether reified type arguments which are fully known at compile time 
+     * are interned into static finals, which is enabled with 
+     * {@code -XDtypeDescriptorConstants}
+     */
+    private final boolean typeDescriptorConstants;
 
     public AbstractTransformer(Context context) {
         this.context = context;
@@ -159,6 +166,7 @@ public abstract class AbstractTransformer implements Transformation {
         log = CeylonLog.instance(context);
         naming = Naming.instance(context);
         simpleAnnotationModels = Options.instance(context).get(OptionName.BOOTSTRAPCEYLON) != null;
+        typeDescriptorConstants = Options.instance(context).get("typeDescriptorConstants") != null;
     }
 
     Context getContext() {
@@ -4967,7 +4975,7 @@ public abstract class AbstractTransformer implements Transformation {
         // same as makeReifiedTypeArgumentsResolved(typeArguments, false) but resolve each element
         List<JCExpression> ret = List.nil();
         for(int i=typeArguments.size()-1;i>=0;i--){
-            ret = ret.prepend(makeReifiedTypeArgumentResolved(typeArguments.get(i).resolveAliases(), false));
+            ret = ret.prepend(makeReifiedTypeArgumentConstant(typeArguments.get(i).resolveAliases()));
         }
         return ret;
     }
@@ -4982,7 +4990,75 @@ public abstract class AbstractTransformer implements Transformation {
     }
 
     public JCExpression makeReifiedTypeArgument(Type pt) {
-        return makeReifiedTypeArgumentResolved(pt.resolveAliases(), false);
+        return makeReifiedTypeArgumentConstant(pt.resolveAliases());
+    }
+    
+    /**
+     * Same as {@code makeReifiedTypeArgumentResolved(pt, false)}, except
+     * that if the type descriptor has to be built and is fully known at
+     * compile time, we intern it into a static final of the current 
+     * toplevel class, so that it's only built once.
+     */
+    private JCExpression makeReifiedTypeArgumentConstant(Type pt) {
+        JCExpression typeDescriptor = makeReifiedTypeArgumentResolved(pt, false);
+        if (!typeDescriptorConstants
+                || !(typeDescriptor instanceof JCMethodInvocation)
+                || current() == null
+                || !isClosedType(pt)) {
+            return typeDescriptor;
+        }
+        ClassDefinitionBuilder constantsBuilder = current().getTypeDescriptorConstantsBuilder();
+        if (constantsBuilder == null) {
+            return typeDescriptor;
+        }
+        String name = constantsBuilder.typeDescriptorConstant(pt, typeDescriptor);
+        JCExpression qualifier = naming.makeDeclarationName(constantsBuilder.getForDefinition(), DeclNameFlag.QUALIFIED);
+        return makeSelect(makeSelect(qualifier, naming.getTypeDescriptorConstantsName()), name);
+    }
+    
+    /**
+     * Determines whether the type descriptor of the given resolved type 
+     * doesn't depend on any type parameter and can be built from outside
+     * the declarations it is used in, that is, it doesn't involve local 
+     * types.
+     */
+    private boolean isClosedType(Type pt) {
+        if(pt.isUnion()){
+            for(Type caseType : pt.getCaseTypes()){
+                if(!isClosedType(caseType.resolveAliases()))
+                    return false;
+            }
+            return true;
+        } else if(pt.isIntersection()){
+            for(Type satisfiedType : pt.getSatisfiedTypes()){
+                if(!isClosedType(satisfiedType.resolveAliases()))
+                    return false;
+            }
+            return true;
+        } else if(pt.isNothing()){
+            return true;
+        }
+        TypeDeclaration declaration = pt.getDeclaration();
+        if(declaration instanceof Constructor){
+            pt = pt.getExtendedType();
+            declaration = pt.getDeclaration();
+        }
+        if(!pt.isClassOrInterface()
+                || Decl.isAncestorLocal(declaration))
+            return false;
+        for(Type typeArgument : pt.getTypeArgumentList()){
+            if(typeArgument == null
+                    || !isClosedType(typeArgument))
+                return false;
+        }
+        Type qualifyingType = pt.getQualifyingType();
+        if(qualifyingType == null){
+            Declaration enclosingDeclaration = getDeclarationContainer(declaration);
+            if(enclosingDeclaration instanceof TypeDeclaration)
+                qualifyingType = ((TypeDeclaration) enclosingDeclaration).getType();
+        }
+        return qualifyingType == null
+                || isClosedType(qualifyingType);
     }
     
     private JCExpression makeReifiedTypeArgumentResolved(Type pt, boolean qualified) {
@@ -26,6 +26,9 @@ import static com.sun.tools.javac.code.Flags.PRIVATE;
 import static com.sun.tools.javac.code.Flags.PUBLIC;
 import static com.sun.tools.javac.code.Flags.STATIC;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.redhat.ceylon.compiler.java.codegen.recovery.TransformationPlan;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.model.typechecker.model.Annotation;
@@ -106,6 +109,14 @@ public class ClassDefinitionBuilder {
 
     private Type thisType;
 
+    /** The names of the interned type descriptors, by type */
+    private final Map<String, String> typeDescriptorConstantNames = new HashMap<String, String>();
+    private final ListBuffer<JCTree> typeDescriptorConstants = ListBuffer.lb();
+    
+    /** The names of the interned callables, by function */
+    private final Map<String, String> callableConstantNames = new HashMap<String, String>();
+    private final ListBuffer<JCTree> callableConstants = ListBuffer.lb();
+
     public static ClassDefinitionBuilder klass(AbstractTransformer gen, String javaClassName, String ceylonClassName, boolean isLocal) {
         ClassDefinitionBuilder builder = new ClassDefinitionBuilder(gen, javaClassName, ceylonClassName, isLocal);
         builder.setContainingClassBuilder(gen.current());
@@ -184,6 +195,25 @@ public class ClassDefinitionBuilder {
             }
         }
         
+        if (typeDescriptorConstants.nonEmpty()) {
+            defs(gen.make().ClassDef(
+                    gen.make().Modifiers(PRIVATE | STATIC | FINAL, gen.makeAtIgnore()),
+                    gen.names().fromString(gen.naming.getTypeDescriptorConstantsName()),
+                    List.<JCTypeParameter>nil(),
+                    null,
+                    List.<JCExpression>nil(),
+                    typeDescriptorConstants.toList()));
+        }
+        if (callableConstants.nonEmpty()) {
+            defs(gen.make().ClassDef(
+                    gen.make().Modifiers(PRIVATE | STATIC | FINAL, gen.makeAtIgnore()),
+                    gen.names().fromString(gen.naming.getCallableConstantsName()),
+                    List.<JCTypeParameter>nil(),
+                    null,
+                    List.<JCExpression>nil(),
+                    callableConstants.toList()));
+        }
+        
         ListBuffer<JCTree> defs = ListBuffer.lb();
         appendDefinitionsTo(defs);
         if (!typeParamAnnotations.isEmpty() || typeParams.size() != typeParamAnnotations.size()) {
@@ -705,6 +735,85 @@ public class ClassDefinitionBuilder {
     }
 
 
+    /**
+     * Returns the builder of the toplevel class which can hold the type 
+     * descriptor constants used by the code of this class, or null if 
+     * there's no such class.
+     */
+    ClassDefinitionBuilder getTypeDescriptorConstantsBuilder() {
+        ClassDefinitionBuilder result = this;
+        while (true) {
+            // interfaces can't have private members, companion classes 
+            // and the classes we generate for other things than Ceylon 
+            // classes don't always end up nested in their containing class
+            if (!(result.forDefinition instanceof Class) 
+                    || result.isInterface() 
+                    || result.isCompanion) {
+                return null;
+            }
+            if (result.getContainingClassBuilder() == null) {
+                break;
+            }
+            result = result.getContainingClassBuilder();
+        }
+        ClassOrInterface decl = result.forDefinition;
+        if (result.built
+                || decl.isAlias()
+                || !Decl.isToplevel(decl)
+                || Decl.isTopLevelObjectExpressionType(decl)) {
+            return null;
+        }
+        return result;
+    }
+    
+    /**
+     * Interns the given type descriptor, which must not depend on 
+     * anything but the given type, into a static final of the nested
+     * {@code $TypeDescriptors$} class, and returns the name of the field. 
+     * The nested class is only initialized on first use, so it doesn't 
+     * matter which static initializers of this class use its fields.
+     */
+    String typeDescriptorConstant(Type type, JCExpression typeDescriptor) {
+        String key = type.asQualifiedString();
+        String name = typeDescriptorConstantNames.get(key);
+        if (name == null) {
+            name = "$" + typeDescriptorConstantNames.size();
+            typeDescriptorConstantNames.put(key, name);
+            typeDescriptorConstants.append(gen.make().VarDef(gen.make().Modifiers(STATIC | FINAL), 
+                    gen.names().fromString(name), 
+                    gen.makeTypeDescriptorType(), 
+                    typeDescriptor));
+        }
+        return name;
+    }
+    
+    /**
+     * Returns the name of the static final of the nested 
+     * {@code $Callables$} class holding the callable with the given key,
+     * or null if it wasn't interned yet.
+     */
+    String getCallableConstant(String key) {
+        return callableConstantNames.get(key);
+    }
+    
+    /**
+     * Interns the given callable, which must not depend on anything but
+     * toplevel declarations, into a static final of the nested 
+     * {@code $Callables$} class, and returns the name of the field.
+     */
+    String callableConstant(String key, JCExpression type, JCExpression callable) {
+        String name = callableConstantNames.get(key);
+        if (name == null) {
+            name = "$" + callableConstantNames.size();
+            callableConstantNames.put(key, name);
+            callableConstants.append(gen.make().VarDef(gen.make().Modifiers(STATIC | FINAL), 
+                    gen.names().fromString(name), 
+                    type, 
+                    callable));
+        }
+        return name;
+    }
+    
     public void reifiedAlias(Type type) {
         try (AbstractTransformer.SavedPosition savedPos = gen.noPosition()) {
             JCExpression klass = gen.makeUnerasedClassLiteral(type.getDeclaration());
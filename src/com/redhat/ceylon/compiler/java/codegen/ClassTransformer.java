@@ -121,6 +121,9 @@ import com.sun.tools.javac.util.ListBuffer;
  */
 public class ClassTransformer extends AbstractTransformer {
 
+    /** The name of the class holding the statics used by serialization */
+    private static final String SERIALIZATION_STATICS = "$serialization$";
+    
     private static final Comparator<Declaration> DeclarationComparator = new Comparator<Declaration>(){
         @Override
         public int compare(Declaration a, Declaration b) {
@@ -1102,6 +1105,7 @@ public class ClassTransformer extends AbstractTransformer {
         }
         satisfaction(def.getSatisfiedTypes(), model, classBuilder);
         serialization(model, classBuilder);
+        caseIndex(model, classBuilder);
         at(def);
         
         // Generate the inner members list for model loading
@@ -1246,6 +1250,39 @@ public class ClassTransformer extends AbstractTransformer {
         return pdb;
     }
 
+    /**
+     * Adds the abstract case index method of the class, if it has one, and 
+     * the implementation of the case index method of its superclass, if 
+     * the class is one of its case types.
+     * @see Decl#hasCaseIndex(Class)
+     */
+    private void caseIndex(Class model, ClassDefinitionBuilder classBuilder) {
+        if (Decl.hasCaseIndex(model)) {
+            MethodDefinitionBuilder mdb = MethodDefinitionBuilder.systemMethod(this, Decl.getCaseIndexMethodName(model));
+            mdb.ignoreModelAnnotations();
+            mdb.modifiers(PUBLIC | ABSTRACT);
+            mdb.resultType(null, make().Type(syms().intType));
+            mdb.noBody();
+            classBuilder.method(mdb);
+        }
+        Type extendedType = model.getExtendedType();
+        if (extendedType != null
+                && extendedType.getDeclaration() instanceof Class
+                && Decl.hasCaseIndex((Class)extendedType.getDeclaration())) {
+            Class enumerated = (Class)extendedType.getDeclaration();
+            int index = Decl.getCaseIndex(enumerated, model);
+            if (index != -1) {
+                MethodDefinitionBuilder mdb = MethodDefinitionBuilder.systemMethod(this, Decl.getCaseIndexMethodName(enumerated));
+                mdb.isOverride(true);
+                mdb.ignoreModelAnnotations();
+                mdb.modifiers(PUBLIC);
+                mdb.resultType(null, make().Type(syms().intType));
+                mdb.body(make().Return(make().Literal(index)));
+                classBuilder.method(mdb);
+            }
+        }
+    }
+
     /**
      * Add extra constructor and methods required for serialization
      */
@@ -1258,6 +1295,7 @@ public class ClassTransformer extends AbstractTransformer {
         serializationConstructor(model, classBuilder);
         serializationSerialize(model, classBuilder);
         serializationDeserialize(model, classBuilder);
+        serializationStatics(model, classBuilder);
     }
     
     private boolean hasField(Declaration member) {
@@ -1482,8 +1520,8 @@ public class ClassTransformer extends AbstractTransformer {
                 stmts.add(make().Exec(make().Apply(
                         List.of(makeJavaType(serializedValueType, JT_TYPE_ARGUMENT)), 
                         naming.makeQualIdent(naming.makeUnquotedIdent(Unfix.deconstructor.toString()), "putValue"),
-                        List.of(makeReifiedTypeArgument(serializedValueType),
-                                makeValueDeclaration(value),
+                        List.of(makeSerializationTypeDescriptor(model, value),
+                                makeSerializationValueDeclaration(model, value),
                                 serializedValue))));
             }
         }
@@ -1521,7 +1559,7 @@ public class ClassTransformer extends AbstractTransformer {
         // assign fields
         for (Declaration member : model.getMembers()) {
             if (hasField(member)) {
-                requiredLookup |= makeDeserializationAssignment(stmts, (Value)member);
+                requiredLookup |= makeDeserializationAssignment(stmts, model, (Value)member);
             }
         }
         if (requiredLookup) {
@@ -1543,7 +1581,7 @@ public class ClassTransformer extends AbstractTransformer {
         classBuilder.method(mdb);
     }
     
-    private boolean makeDeserializationAssignment(ListBuffer<JCStatement> stmts, Value value) {
+    private boolean makeDeserializationAssignment(ListBuffer<JCStatement> stmts, Class model, Value value) {
         Type typeOrReferenceType;
         boolean isValueType = Decl.isValueTypeDecl(simplifyType(value.getType()));
         //if (isValueType) {
@@ -1556,8 +1594,8 @@ public class ClassTransformer extends AbstractTransformer {
         JCExpression newValue = make().Apply(List.of(makeJavaType(typeOrReferenceType, JT_TYPE_ARGUMENT)),
                 naming.makeQualIdent(naming.makeUnquotedIdent(Unfix.deconstructed.toString()), "getValue"),
                 List.<JCExpression>of(
-                        makeReifiedTypeArgument(typeOrReferenceType),
-                        makeValueDeclaration(value)));
+                        makeSerializationTypeDescriptor(model, value),
+                        makeSerializationValueDeclaration(model, value)));
         // let ( 
         // Object valueOrRef = ^^;
         // valueOrRef instanceof Reference ? (($InstanceLeaker$)valueOrRef).$leakInstance$() : (Type)valueOrRef;
@@ -1582,40 +1620,51 @@ public class ClassTransformer extends AbstractTransformer {
         }
         boolean requiredLookup = false;
         final JCStatement assignment;
-        if (value.isToplevel() || value.isLate()) {// XXX duplicates logic in AttributeDefinitionBuilder
+        if (isSerializationFinalField(value)) {
+            // The field will have final modifier, so we need some 
+            // jiggery pokery to reset it.
+            JCExpression mhExpr;
+            if (hasSerializationStatics(model)) {
+                mhExpr = naming.makeQualIdent(naming.makeUnquotedIdent(SERIALIZATION_STATICS), 
+                        getSerializationSetterName(value));
+            } else {
+                requiredLookup = true;
+                mhExpr = makeFinalFieldSetter(naming.makeUnquotedIdent("lookup"), value);
+            }
+            JCExpression fieldType = makeJavaType(value.getType());//TODO probably wrong
+            assignment = makeReassignFinalField(mhExpr, fieldType, newValue);
+        } else if (value.isToplevel() || value.isLate()) {// XXX duplicates logic in AttributeDefinitionBuilder
             // We use the setter for late values, since that will allocate 
             // the array if needed.
             assignment = make().Exec(make().Apply(null,
                     naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_MEMBER | Naming.NA_SETTER),
                     List.of(newValue)));
         } else {
-            // We bypass the setter
-            if (value.isVariable()) {
-                assignment = make().Exec(make().Assign(
-                        naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_IDENT), 
-                        newValue));
-            } else {
-                // The field will have final modifier, so we need some 
-                // jiggery pokery to reset it.
-                requiredLookup = true;
-                String fieldName = value.getName();
-                JCExpression fieldType = makeJavaType(value.getType());//TODO probably wrong
-                assignment = makeReassignFinalField(fieldType, fieldName, newValue);
-            }
+            // We bypass the setter of variable values
+            assignment = make().Exec(make().Assign(
+                    naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_IDENT), 
+                    newValue));
         }
         stmts.add(assignment);
         return requiredLookup;
     }
 
-    private JCStatement makeReassignFinalField(JCExpression fieldType,
-            String fieldName, JCExpression newValue) {
-        final JCStatement assignment;
-        JCExpression mhExpr = utilInvocation().setter(
-                naming.makeUnquotedIdent("lookup"),
+    /**
+     * Makes an invocation of {@code Util.setter()} returning a 
+     * {@code MethodHandle} which sets the given final field, using the 
+     * given {@code MethodHandles.Lookup}.
+     */
+    private JCExpression makeFinalFieldSetter(JCExpression lookup, Value value) {
+        return utilInvocation().setter(
+                lookup,
                 //naming.makeQualIdent(makeJavaType(((Class)value.getContainer()).getType(), JT_NO_PRIMITIVES), "class"),
-                make().Literal(fieldName)// TODO field name should encapsulated
+                make().Literal(value.getName())// TODO field name should encapsulated
                 );
-        
+    }
+    
+    private JCStatement makeReassignFinalField(JCExpression mhExpr, 
+            JCExpression fieldType, JCExpression newValue) {
+        final JCStatement assignment;
         JCExpression expr = make().Apply(null, 
                 naming.makeQualIdent(mhExpr, "invokeExact"), 
                 List.of(naming.makeThis(), 
@@ -1628,6 +1677,122 @@ public class ClassTransformer extends AbstractTransformer {
         return expressionGen().makeMemberValueOrFunctionDeclarationLiteral(null, value, false);
     }
     
+    /**
+     * Whether the serialized field declarations, and the type descriptors 
+     * which don't depend on the instance, are held in static finals of a 
+     * nested {@code $serialization$} class rather than looked up by every
+     * {@code $serialize$()} and {@code $deserialize$()}. The holder class 
+     * is only initialized on first use, so loading a serializable class 
+     * doesn't create its metamodel. Java inner classes can't have static 
+     * members, so we only do this for toplevel classes.
+     */
+    private boolean hasSerializationStatics(Class model) {
+        return model.isToplevel();
+    }
+    
+    /**
+     * Whether the given type descriptor of a field of the given class
+     * should be held in a static final. Descriptors which are just a 
+     * {@code $TypeDescriptor$} field are already static, and those of a
+     * generic class could depend on its reified type arguments.
+     */
+    private boolean isSerializationStaticTypeDescriptor(Class model, JCExpression typeDescriptor) {
+        return hasSerializationStatics(model)
+                && model.getTypeParameters().isEmpty()
+                && typeDescriptor instanceof JCMethodInvocation;
+    }
+    
+    private String getSerializationValueDeclarationName(Value value) {
+        return Naming.quoteIfJavaKeyword(value.getName());
+    }
+    
+    private String getSerializationTypeDescriptorName(Value value) {
+        return value.getName() + "$type";
+    }
+    
+    private String getSerializationSetterName(Value value) {
+        return value.getName() + "$setter";
+    }
+    
+    /**
+     * Whether {@code $deserialize$()} has to reset the given field through 
+     * a {@code MethodHandle} because it's final.
+     */
+    private boolean isSerializationFinalField(Value value) {
+        return !value.isToplevel() 
+                && !value.isLate() 
+                && !value.isVariable();
+    }
+    
+    private JCExpression makeSerializationValueDeclaration(Class model, Value value) {
+        if (hasSerializationStatics(model)) {
+            return naming.makeQualIdent(naming.makeUnquotedIdent(SERIALIZATION_STATICS), 
+                    getSerializationValueDeclarationName(value));
+        }
+        return makeValueDeclaration(value);
+    }
+    
+    private JCExpression makeSerializationTypeDescriptor(Class model, Value value) {
+        JCExpression typeDescriptor = makeReifiedTypeArgument(value.getType());
+        if (isSerializationStaticTypeDescriptor(model, typeDescriptor)) {
+            return naming.makeQualIdent(naming.makeUnquotedIdent(SERIALIZATION_STATICS), 
+                    getSerializationTypeDescriptorName(value));
+        }
+        return typeDescriptor;
+    }
+    
+    /**
+     * Generates the nested {@code $serialization$} class holding the 
+     * static finals used by {@code $serialize$()} and 
+     * {@code $deserialize$()}, if any.
+     * @see #hasSerializationStatics(Class)
+     */
+    private void serializationStatics(Class model, ClassDefinitionBuilder classBuilder) {
+        if (!hasSerializationStatics(model)) {
+            return;
+        }
+        ListBuffer<JCTree> fields = ListBuffer.lb();
+        for (Declaration member : model.getMembers()) {
+            if (hasField(member)) {
+                Value value = (Value)member;
+                fields.add(make().VarDef(make().Modifiers(STATIC | FINAL), 
+                        names().fromString(getSerializationValueDeclarationName(value)), 
+                        makeJavaType(typeFact().getLanguageModuleDeclarationTypeDeclaration("ValueDeclaration").getType()), 
+                        makeValueDeclaration(value)));
+                JCExpression typeDescriptor = makeReifiedTypeArgument(value.getType());
+                if (isSerializationStaticTypeDescriptor(model, typeDescriptor)) {
+                    fields.add(make().VarDef(make().Modifiers(STATIC | FINAL), 
+                            names().fromString(getSerializationTypeDescriptorName(value)), 
+                            makeTypeDescriptorType(), 
+                            typeDescriptor));
+                }
+                if (isSerializationFinalField(value)) {
+                    // a lookup in this class keeps access to the private 
+                    // fields of the outer class
+                    JCExpression lookup = make().Apply(null, 
+                            naming.makeQualIdent(
+                                    make().Apply(null, naming.makeQuotedFQIdent("java.lang.invoke.MethodHandles.lookup"), List.<JCExpression>nil()), 
+                                    "in"), 
+                            List.<JCExpression>of(naming.makeQualIdent(makeJavaType(model.getType(), JT_RAW | JT_NO_PRIMITIVES), "class")));
+                    fields.add(make().VarDef(make().Modifiers(STATIC | FINAL), 
+                            names().fromString(getSerializationSetterName(value)), 
+                            make().Type(syms().methodHandleType), 
+                            makeFinalFieldSetter(lookup, value)));
+                }
+            }
+        }
+        if (fields.isEmpty()) {
+            return;
+        }
+        ClassDefinitionBuilder staticsBuilder = ClassDefinitionBuilder.klass(this, 
+                SERIALIZATION_STATICS, null, false);
+        staticsBuilder.modifiers(PRIVATE | STATIC | FINAL);
+        staticsBuilder.annotations(makeAtIgnore());
+        staticsBuilder.getInitBuilder().modifiers(PRIVATE);
+        staticsBuilder.defs(fields.toList());
+        classBuilder.defs(staticsBuilder.build());
+    }
+    
     /**
      * Generate a method for a shared FunctionalParameter which delegates to the Callable 
      * @param klass 
@@ -4747,6 +4912,7 @@ public class ClassTransformer extends AbstractTransformer {
         addMissingUnrefinedMembers(def, klass, objectClassBuilder);
         satisfaction(satisfiesTypes, klass, objectClassBuilder);
         serialization(klass, objectClassBuilder);
+        caseIndex(klass, objectClassBuilder);
         
         if (model != null
                 && Decl.isToplevel(model)
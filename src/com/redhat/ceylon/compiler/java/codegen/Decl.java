@@ -989,4 +989,79 @@ public class Decl {
             return null;
         }
     }
+    
+    /**
+     * The number of case types from which an enumerated class gets a case 
+     * index: with fewer cases a chain of {@code instanceof} is just as fast.
+     */
+    private static final int MIN_CASE_INDEXED_TYPES = 8;
+    
+    /**
+     * Determines whether the given class has a case index: an abstract 
+     * method, named by {@link #getCaseIndexMethodName(Class)}, which each of 
+     * its case types implements by returning its position in the 
+     * {@code of} clause. Only non-generic enumerated classes whose case 
+     * types are all non-generic classes have one.
+     */
+    public static boolean hasCaseIndex(Class cls) {
+        List<Type> caseTypes = cls.getCaseTypes();
+        if (caseTypes == null
+                || caseTypes.size() < MIN_CASE_INDEXED_TYPES
+                || !cls.isAbstract()
+                || cls.isAlias()
+                || cls.isNativeHeader()
+                || isLocal(cls)
+                || !cls.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        for (Type caseType : caseTypes) {
+            if (!(caseType.getDeclaration() instanceof Class)
+                    || !caseType.getDeclaration().getTypeParameters().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Determines whether we can switch on the case index of the given 
+     * class: it must have one, and the class and its case types must be 
+     * compiled along with the switch, so that we know their case index 
+     * methods exist and agree with the {@code of} clause we see.
+     */
+    public static boolean canUseCaseIndex(Class cls) {
+        if (!hasCaseIndex(cls)
+                || cls instanceof LazyClass) {
+            return false;
+        }
+        for (Type caseType : cls.getCaseTypes()) {
+            if (caseType.getDeclaration() instanceof LazyClass) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the position of the given class in the {@code of} clause of 
+     * the given enumerated class, or -1 if it isn't one of its case types.
+     */
+    public static int getCaseIndex(Class enumerated, TypeDeclaration caseDeclaration) {
+        List<Type> caseTypes = enumerated.getCaseTypes();
+        for (int ii = 0; ii < caseTypes.size(); ii++) {
+            if (caseTypes.get(ii).getDeclaration().equals(caseDeclaration)) {
+                return ii;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the name of the case index method of the given class. It 
+     * includes the qualified name of the class, since a case type can 
+     * itself be a case-indexed enumerated class.
+     */
+    public static String getCaseIndexMethodName(Class cls) {
+        return "$caseIndex$" + cls.getQualifiedNameString().replace("::", "$").replace('.', '$');
+    }
 }
@@ -20,17 +20,16 @@
 
 package com.redhat.ceylon.compiler.java.codegen;
 
-import com.redhat.ceylon.compiler.typechecker.tree.Tree.MethodDeclaration;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
-import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 
-public class DeferredVisitor extends Visitor {
+public class DeferredVisitor extends FusableVisitor {
 
     @Override
-    public void visit(MethodDeclaration that) {
-        super.visit(that);
-        if (isDeferredOrParamInitialized(that)) {
-            that.getDeclarationModel().setDeferred(true);
+    protected void exit(Node that) {
+        if (that instanceof Tree.MethodDeclaration
+                && isDeferredOrParamInitialized((Tree.MethodDeclaration)that)) {
+            ((Tree.MethodDeclaration)that).getDeclarationModel().setDeferred(true);
         }
     }
 
@@ -1,11 +1,12 @@
 package com.redhat.ceylon.compiler.java.codegen;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
-import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.model.typechecker.model.ControlBlock;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Value;
@@ -16,35 +17,63 @@ import com.redhat.ceylon.model.typechecker.model.Value;
  * within the loop.
  * See #1227.
  */
-public class DefiniteAssignmentVisitor extends Visitor {
+public class DefiniteAssignmentVisitor extends FusableVisitor {
     
     private ControlBlock forBlock = null;
     private ControlBlock elseBlock = null;
     
     private HashMap<Value, ControlBlock> tracked = new HashMap<Value, ControlBlock>();
     
-    public void visit(Tree.AnyMethod that) {
-        ControlBlock prevControlBlock = forBlock;
-        forBlock = null;
-        super.visit(that);
-        forBlock = prevControlBlock;
+    private ArrayList<ControlBlock> prevControlBlocks = new ArrayList<ControlBlock>();
+    private ArrayList<Tree.ForStatement> forStatements = new ArrayList<Tree.ForStatement>();
+    
+    @Override
+    protected boolean enter(Node that) {
+        if (that instanceof Tree.AttributeDeclaration) {
+            track((Tree.AttributeDeclaration)that);
+            // no need to look any further
+            return false;
+        } else if (that instanceof Tree.AnyMethod
+                || that instanceof Tree.AnyAttribute
+                || that instanceof Tree.AnyClass) {
+            prevControlBlocks.add(forBlock);
+            forBlock = null;
+        } else if (that instanceof Tree.ForStatement) {
+            prevControlBlocks.add(forBlock);
+            forStatements.add((Tree.ForStatement)that);
+        } else if (that instanceof Tree.ForClause) {
+            forBlock = ((Tree.ForClause)that).getControlBlock();
+        } else if (isForElseClause(that)) {
+            elseBlock = ((Tree.ElseClause)that).getControlBlock();
+        } else if (that instanceof Tree.SpecifierStatement) {
+            specify((Tree.SpecifierStatement)that);
+        }
+        return true;
     }
     
-    public void visit(Tree.AnyAttribute that) {
-        ControlBlock prevControlBlock = forBlock;
-        forBlock = null;
-        super.visit(that);
-        forBlock = prevControlBlock;
+    @Override
+    protected void exit(Node that) {
+        if (that instanceof Tree.AttributeDeclaration) {
+            return;
+        } else if (that instanceof Tree.AnyMethod
+                || that instanceof Tree.AnyAttribute
+                || that instanceof Tree.AnyClass) {
+            forBlock = prevControlBlocks.remove(prevControlBlocks.size()-1);
+        } else if (that instanceof Tree.ForStatement) {
+            forStatements.remove(forStatements.size()-1);
+            forBlock = prevControlBlocks.remove(prevControlBlocks.size()-1);
+        } else if (isForElseClause(that)) {
+            elseBlock = null;
+        }
     }
     
-    public void visit(Tree.AnyClass that) {
-        ControlBlock prevControlBlock = forBlock;
-        forBlock = null;
-        super.visit(that);
-        forBlock = prevControlBlock;
+    private boolean isForElseClause(Node that) {
+        return that instanceof Tree.ElseClause
+                && !forStatements.isEmpty()
+                && forStatements.get(forStatements.size()-1).getElseClause() == that;
     }
     
-    public void visit(Tree.AttributeDeclaration that) {
+    private void track(Tree.AttributeDeclaration that) {
         // We're interested in non-variable, deferred AttributeDeclarations 
         // that are declared outside a for/else loop, but specified inside it
         if (that.getSpecifierOrInitializerExpression() == null
@@ -54,7 +83,7 @@ public class DefiniteAssignmentVisitor extends Visitor {
         }
     }
     
-    public void visit(Tree.SpecifierStatement stmt) {
+    private void specify(Tree.SpecifierStatement stmt) {
         Tree.Term bme = stmt.getBaseMemberExpression();
         if (bme instanceof Tree.MemberOrTypeExpression) {
             Declaration decl = ((Tree.MemberOrTypeExpression)bme).getDeclaration();
@@ -73,21 +102,5 @@ public class DefiniteAssignmentVisitor extends Visitor {
                 assigned.add((Value)decl);
             }
         }
-        super.visit(stmt);
-    }
-    
-    public void visit(Tree.ForStatement that) {
-        ControlBlock prevControlBlock = forBlock;
-        
-        forBlock = that.getForClause().getControlBlock();
-        that.getForClause().visit(this);
-        
-        if (that.getElseClause() != null) {
-            elseBlock = that.getElseClause().getControlBlock();
-            that.getElseClause().visit(this);
-            elseBlock = null;
-        }
-        
-        forBlock = prevControlBlock;
     }
 }
@@ -102,6 +102,7 @@ import com.sun.tools.javac.util.Convert;
 import com.sun.tools.javac.util.List;
 import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Options;
 
 /**
  * This transformer deals with expressions only
@@ -186,6 +187,21 @@ public class ExpressionTransformer extends AbstractTransformer {
     private ClassOrInterface withinSuperInvocation = null;
     private ClassOrInterface withinDefaultParameterExpression = null;
     
+    /**
+     * Whether comprehensions which are immediately turned into a sequence 
+     * are transformed into loops, which is enabled with 
+     * {@code -XDcomprehensionLoopFusion} unless the 
+     * {@link Optimization#ComprehensionLoopFusion} optimization is disabled
+     */
+    private final boolean comprehensionLoopFusion;
+    
+    /**
+     * Whether references to toplevel functions share a single callable
+     * per toplevel class, which is enabled with 
+     * {@code -XDcallableConstants}
+     */
+    private final boolean callableConstants;
+    
     public static ExpressionTransformer getInstance(Context context) {
         ExpressionTransformer trans = context.get(ExpressionTransformer.class);
         if (trans == null) {
@@ -197,6 +213,8 @@ public class ExpressionTransformer extends AbstractTransformer {
 
 	private ExpressionTransformer(Context context) {
         super(context);
+        comprehensionLoopFusion = Options.instance(context).get("comprehensionLoopFusion") != null;
+        callableConstants = Options.instance(context).get("callableConstants") != null;
     }
 
     // Statement expressions
@@ -1473,18 +1491,105 @@ public class ExpressionTransformer extends AbstractTransformer {
         return makeMetamodelInvocation("getOrCreateMetamodel", List.of(classLiteral), null);
     }
 
+    /** 
+     * How many characters we expect the value of an interpolated 
+     * expression to take, when sizing the {@code StringBuilder} of a 
+     * string template
+     */
+    private static final int STRING_TEMPLATE_EXPRESSION_LENGTH = 16;
+    
+    /**
+     * A part of a string template: either a constant, which may be the 
+     * result of merging several literals and constant expressions, or 
+     * an interpolated expression.
+     */
+    private static class StringTemplatePart {
+        final Node node;
+        final String constant;
+        StringTemplatePart(Node node, String constant) {
+            this.node = node;
+            this.constant = constant;
+        }
+        boolean isConstant() {
+            return constant != null;
+        }
+    }
+    
     public JCExpression transformStringExpression(Tree.StringTemplate expr) {
         at(expr);
+        java.util.List<StringTemplatePart> parts = getStringTemplateParts(expr);
+        if (parts.isEmpty()) {
+            return ceylonLiteral("");
+        }
+        
+        boolean needsBuilder = parts.size() > 2;
+        int capacity = 0;
+        for (StringTemplatePart part : parts) {
+            if (part.isConstant()) {
+                capacity += part.constant.length();
+            } else {
+                capacity += STRING_TEMPLATE_EXPRESSION_LENGTH;
+                Tree.Expression expression = (Tree.Expression)part.node;
+                // there's no String.valueOf() for a code point 
+                needsBuilder |= isCeylonCharacter(expression.getTypeModel())
+                        && expression.getUnboxed();
+            }
+        }
+        
+        if (!needsBuilder) {
+            // a constant, a single expression, or "a".concat(b)
+            JCExpression result = makeStringTemplatePart(parts.get(0));
+            if (parts.size() == 2) {
+                JCExpression concatenated = makeStringTemplatePart(parts.get(1));
+                at(expr);
+                result = make().Apply(null, makeSelect(result, "concat"), List.<JCExpression>of(concatenated));
+            }
+            return result;
+        }
+        
         JCExpression builder;
-        builder = make().NewClass(null, null, naming.makeFQIdent("java","lang","StringBuilder"), List.<JCExpression>nil(), null);
+        builder = make().NewClass(null, null, naming.makeFQIdent("java","lang","StringBuilder"), 
+                List.<JCExpression>of(make().Literal(capacity)), null);
+        for (StringTemplatePart part : parts) {
+            at(part.node);
+            if (part.isConstant()) {
+                builder = make().Apply(null, makeSelect(builder, "append"), List.<JCExpression>of(ceylonLiteral(part.constant)));
+                continue;
+            }
+            Tree.Expression expression = (Tree.Expression)part.node;
+            // Here in both cases we don't need a type cast for erasure
+            if (isCeylonBasicType(expression.getTypeModel())
+                    && expression.getUnboxed()) {// TODO: Test should be erases to String, long, int, boolean, char, byte, float, double
+                // If erases to a Java primitive just call append, don't box it just to call format. 
+                String method = isCeylonCharacter(expression.getTypeModel()) ? "appendCodePoint" : "append";
+                builder = make().Apply(null, makeSelect(builder, method), List.<JCExpression>of(
+                        transformExpression(expression, BoxingStrategy.UNBOXED, null)));
+            } else {
+                JCMethodInvocation formatted = make().Apply(null, makeSelect(transformExpression(expression), "toString"), List.<JCExpression>nil());
+                builder = make().Apply(null, makeSelect(builder, "append"), List.<JCExpression>of(formatted));
+            }
+        }
 
+        return make().Apply(null, makeSelect(builder, "toString"), List.<JCExpression>nil());
+    }
+    
+    /**
+     * Returns the parts of the given template, dropping the empty 
+     * literals and merging the adjacent constants.
+     */
+    private java.util.List<StringTemplatePart> getStringTemplateParts(Tree.StringTemplate expr) {
+        java.util.List<StringTemplatePart> parts = new ArrayList<StringTemplatePart>();
         java.util.List<Tree.StringLiteral> literals = expr.getStringLiterals();
         java.util.List<Tree.Expression> expressions = expr.getExpressions();
+        StringBuilder constant = new StringBuilder();
+        Node constantNode = null;
         for (int ii = 0; ii < literals.size(); ii += 1) {
             Tree.StringLiteral literal = literals.get(ii);
             if (!literal.getText().isEmpty()) {// ignore empty string literals
-                at(literal);
-                builder = make().Apply(null, makeSelect(builder, "append"), List.<JCExpression>of(transform(literal)));
+                constant.append(literal.getText());
+                if (constantNode == null) {
+                    constantNode = literal;
+                }
             }
             if (ii == expressions.size()) {
                 // The loop condition includes the last literal, so break out
@@ -1492,21 +1597,67 @@ public class ExpressionTransformer extends AbstractTransformer {
                 break;
             }
             Tree.Expression expression = expressions.get(ii);
-            at(expression);
-            // Here in both cases we don't need a type cast for erasure
-            if (isCeylonBasicType(expression.getTypeModel())
-                    && expression.getUnboxed()) {// TODO: Test should be erases to String, long, int, boolean, char, byte, float, double
-                // If erases to a Java primitive just call append, don't box it just to call format. 
-                String method = isCeylonCharacter(expression.getTypeModel()) ? "appendCodePoint" : "append";
-                builder = make().Apply(null, makeSelect(builder, method), List.<JCExpression>of(
-                        transformExpression(expression, BoxingStrategy.UNBOXED, null)));
+            String value = getConstantStringValue(expression);
+            if (value != null) {
+                constant.append(value);
+                if (constantNode == null) {
+                    constantNode = expression;
+                }
             } else {
-                JCMethodInvocation formatted = make().Apply(null, makeSelect(transformExpression(expression), "toString"), List.<JCExpression>nil());
-                builder = make().Apply(null, makeSelect(builder, "append"), List.<JCExpression>of(formatted));
+                if (constantNode != null) {
+                    parts.add(new StringTemplatePart(constantNode, constant.toString()));
+                    constant.setLength(0);
+                    constantNode = null;
+                }
+                parts.add(new StringTemplatePart(expression, null));
             }
         }
-
-        return make().Apply(null, makeSelect(builder, "toString"), List.<JCExpression>nil());
+        if (constantNode != null) {
+            parts.add(new StringTemplatePart(constantNode, constant.toString()));
+        }
+        return parts;
+    }
+    
+    /**
+     * Returns the {@code string} of the given interpolated expression if 
+     * it's a literal whose {@code string} we know at compile time, 
+     * otherwise null.
+     */
+    private String getConstantStringValue(Tree.Expression expression) {
+        Tree.Term term = expression.getTerm();
+        if (term instanceof Tree.StringLiteral) {
+            return literalValue((Tree.StringLiteral)term);
+        } else if (term instanceof Tree.CharLiteral) {
+            return new String(Character.toChars(literalValue((Tree.CharLiteral)term)));
+        } else if (term instanceof Tree.NaturalLiteral) {
+            try {
+                return Long.toString(literalValue((Tree.NaturalLiteral)term));
+            } catch (ErroneousException e) {
+                // the error gets reported when we transform the expression
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the given part of a template as a Java String
+     */
+    private JCExpression makeStringTemplatePart(StringTemplatePart part) {
+        at(part.node);
+        if (part.isConstant()) {
+            return ceylonLiteral(part.constant);
+        }
+        Tree.Expression expression = (Tree.Expression)part.node;
+        if (isCeylonBasicType(expression.getTypeModel())
+                && expression.getUnboxed()) {
+            // String.valueOf() also takes care of Strings which are null 
+            // because of Java interop, like StringBuilder.append() would
+            return make().Apply(null, makeSelect(naming.makeFQIdent("java","lang","String"), "valueOf"), List.<JCExpression>of(
+                    transformExpression(expression, BoxingStrategy.UNBOXED, null)));
+        } else {
+            return make().Apply(null, makeSelect(transformExpression(expression), "toString"), List.<JCExpression>nil());
+        }
     }
 
     public JCExpression transform(Tree.SequenceEnumeration value) {
@@ -1592,12 +1743,196 @@ public class ExpressionTransformer extends AbstractTransformer {
     }
     
     public JCExpression comprehensionAsSequential(Tree.Comprehension comprehension, Type expectedType) {
-        JCExpression sequential = iterableToSequential(transformComprehension(comprehension));
+        JCExpression sequential;
+        if (isComprehensionLoopFusable(comprehension)) {
+            sequential = transformComprehensionLoop(comprehension);
+        } else {
+            sequential = iterableToSequential(transformComprehension(comprehension));
+        }
         Type elementType = comprehension.getInitialComprehensionClause().getTypeModel();
         Type sequentialType = typeFact().getSequentialType(elementType);
         return sequentialEmptiness(sequential, expectedType, sequentialType);
     }
     
+    /**
+     * Determines whether the given comprehension, whose elements are 
+     * collected into a sequence straight away, can be transformed into 
+     * nested loops by {@link #transformComprehensionLoop(Tree.Comprehension)}
+     * rather than into an {@code AbstractIterable}. 
+     * We only do that for {@code if} clauses with boolean conditions: the 
+     * others declare variables which need the condition list machinery.
+     */
+    private boolean isComprehensionLoopFusable(Tree.Comprehension comprehension) {
+        if (!comprehensionLoopFusion
+                || statementGen().isOptimizationDisabled(Optimization.ComprehensionLoopFusion)
+                // we can't have statements before the super() call
+                || withinSuperInvocation != null) {
+            return false;
+        }
+        Tree.ComprehensionClause clause = comprehension.getInitialComprehensionClause();
+        while (clause != null) {
+            if (clause instanceof Tree.ForComprehensionClause) {
+                Tree.ForIterator forIterator = ((Tree.ForComprehensionClause)clause).getForIterator();
+                if (!(forIterator instanceof Tree.ValueIterator)
+                        && !(forIterator instanceof Tree.PatternIterator)) {
+                    return false;
+                }
+                clause = ((Tree.ForComprehensionClause)clause).getComprehensionClause();
+            } else if (clause instanceof Tree.IfComprehensionClause) {
+                for (Tree.Condition condition : ((Tree.IfComprehensionClause)clause).getConditionList().getConditions()) {
+                    if (!(condition instanceof Tree.BooleanCondition)) {
+                        return false;
+                    }
+                }
+                clause = ((Tree.IfComprehensionClause)clause).getComprehensionClause();
+            } else if (clause instanceof Tree.ExpressionComprehensionClause) {
+                clause = null;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Transforms a comprehension whose elements are collected into a 
+     * sequence straight away into nested loops which add the elements to 
+     * a list, rather than into an {@code AbstractIterable} with an 
+     * iterator state machine:
+     * 
+     * <pre>
+     *     let (
+     *         java.util.ArrayList&lt;Object> LIST = new java.util.ArrayList&lt;Object>(CAPACITY);
+     *         FOR_LOOP {
+     *             if (CONDITIONS) {
+     *                 FOR_LOOP {
+     *                     LIST.add(ELEMENT);
+     *                 }
+     *             }
+     *         }
+     *     ) (Sequential)Util.sequentialCopy($reifiedElement, empty, LIST.toArray())
+     * </pre>
+     * The list is sized for the first iterable when it's a sequence and 
+     * it's followed by the element expression, with no {@code if} or 
+     * other {@code for} clause, so that the capacity is the exact size.
+     */
+    private JCExpression transformComprehensionLoop(Tree.Comprehension comprehension) {
+        Type elementType = typeFact().denotableType(comprehension.getInitialComprehensionClause().getTypeModel());
+        ListBuffer<JCStatement> stmts = ListBuffer.<JCStatement>lb();
+        at(comprehension);
+        SyntheticName listName = naming.alias("comprehension");
+        
+        JCExpression firstIterable = null;
+        List<JCExpression> capacity = List.<JCExpression>nil();
+        Tree.ComprehensionClause initial = comprehension.getInitialComprehensionClause();
+        if (initial instanceof Tree.ForComprehensionClause
+                && isComprehensionLoopSizable((Tree.ForComprehensionClause)initial)) {
+            Tree.Expression iterableExpr = ((Tree.ForComprehensionClause)initial).getForIterator().getSpecifierExpression().getExpression();
+            Type sequentialType = iterableExpr.getTypeModel().getSupertype(typeFact().getSequentialDeclaration());
+            SyntheticName iterableName = naming.alias("iterable");
+            stmts.append(makeVar(Flags.FINAL, iterableName, makeJavaType(sequentialType), 
+                    transformExpression(iterableExpr, BoxingStrategy.BOXED, sequentialType)));
+            at(comprehension);
+            // (int)Math.min(size, Integer.MAX_VALUE), since Util.toInt() would throw
+            capacity = List.<JCExpression>of(make().TypeCast(syms().intType, 
+                    make().Apply(null, naming.makeFQIdent("java", "lang", "Math", "min"), List.<JCExpression>of(
+                            make().Apply(null, makeSelect(iterableName.makeIdent(), "getSize"), List.<JCExpression>nil()),
+                            make().Literal((long)Integer.MAX_VALUE)))));
+            firstIterable = iterableName.makeIdent();
+        }
+        stmts.append(makeVar(Flags.FINAL, listName, makeComprehensionListType(), 
+                make().NewClass(null, null, makeComprehensionListType(), capacity, null)));
+        stmts.appendList(transformComprehensionLoopClause(initial, firstIterable, listName, elementType));
+        
+        at(comprehension);
+        JCExpression array = make().Apply(null, makeSelect(listName.makeIdent(), "toArray"), List.<JCExpression>nil());
+        return make().LetExpr(stmts.toList(), 
+                make().TypeCast(makeJavaType(typeFact().getSequentialType(elementType), JT_RAW), 
+                        utilInvocation().sequentialCopy(makeReifiedTypeArgument(elementType), makeEmptyAsSequential(false), array)));
+    }
+    
+    private JCExpression makeComprehensionListType() {
+        return make().TypeApply(naming.makeFQIdent("java", "util", "ArrayList"), 
+                List.<JCExpression>of(make().Type(syms().objectType)));
+    }
+    
+    /**
+     * Whether we know how many elements the given initial {@code for} 
+     * clause iterates without iterating it, and that it's the size of 
+     * the comprehension. With an {@code if} clause it would only be an 
+     * upper bound, and a filter over a large range would allocate a 
+     * large list for a few elements.
+     */
+    private boolean isComprehensionLoopSizable(Tree.ForComprehensionClause clause) {
+        return clause.getComprehensionClause() instanceof Tree.ExpressionComprehensionClause
+                && typeFact().isSequentialType(clause.getForIterator().getSpecifierExpression().getExpression().getTypeModel());
+    }
+    
+    /**
+     * Transforms the given clause of a comprehension, and the clauses 
+     * which follow it, into the statements which add its elements to the 
+     * given list.
+     * @param iterableExpr The transformed iterable of a {@code for} 
+     * clause, or null if it's yet to be transformed
+     */
+    private List<JCStatement> transformComprehensionLoopClause(Tree.ComprehensionClause clause, 
+            JCExpression iterableExpr, SyntheticName listName, Type elementType) {
+        if (clause instanceof Tree.ForComprehensionClause) {
+            Tree.ForComprehensionClause fcl = (Tree.ForComprehensionClause)clause;
+            Tree.ForIterator forIterator = fcl.getForIterator();
+            Tree.Expression specifierExpression = forIterator.getSpecifierExpression().getExpression();
+            Type iteratedType = typeFact().getIteratedType(specifierExpression.getTypeModel());
+            if (iterableExpr == null) {
+                Type iterableType = specifierExpression.getTypeModel().getSupertype(typeFact().getIterableDeclaration());
+                Type expectedIterableType = typeFact().isNonemptyIterableType(iterableType)
+                        ? typeFact().getNonemptyIterableType(iteratedType)
+                        : typeFact().getIterableType(iteratedType);
+                iterableExpr = transformExpression(specifierExpression, BoxingStrategy.BOXED, expectedIterableType);
+            }
+            
+            SyntheticName elemName = naming.alias("elem");
+            SyntheticName iteratorName;
+            List<JCStatement> itemDecls = List.<JCStatement>nil();
+            if (forIterator instanceof Tree.ValueIterator) {
+                Tree.Variable variable = ((Tree.ValueIterator)forIterator).getVariable();
+                itemDecls = itemDecls.append(statementGen().transformVariable(variable, elemName.makeIdent()).build());
+                iteratorName = naming.synthetic(variable.getDeclarationModel()).suffixedBy(Suffix.$iterator$).alias();
+            } else {
+                Tree.Pattern pat = ((Tree.PatternIterator)forIterator).getPattern();
+                for (VarDefBuilder vdb : statementGen().transformPattern(pat, elemName.makeIdent())) {
+                    itemDecls = itemDecls.append(vdb.build());
+                }
+                iteratorName = elemName.suffixedBy(Suffix.$iterator$);
+            }
+            
+            List<JCStatement> body = transformComprehensionLoopClause(fcl.getComprehensionClause(), null, listName, elementType);
+            return statementGen().transformIterableIteration(fcl, null, 
+                    elemName, iteratorName, 
+                    specifierExpression.getTypeModel(), iteratedType, 
+                    iterableExpr, itemDecls, body, 
+                    !statementGen().isOptimizationDisabled(Optimization.ArrayIterationDynamic), 
+                    !statementGen().isOptimizationDisabled(Optimization.TupleIterationDynamic));
+        } else if (clause instanceof Tree.IfComprehensionClause) {
+            Tree.IfComprehensionClause icl = (Tree.IfComprehensionClause)clause;
+            JCExpression test = null;
+            for (Tree.Condition condition : icl.getConditionList().getConditions()) {
+                at(condition);
+                JCExpression conditionExpr = transformExpression(((Tree.BooleanCondition)condition).getExpression(), 
+                        BoxingStrategy.UNBOXED, typeFact().getBooleanType());
+                test = test == null ? conditionExpr : make().Binary(JCTree.AND, test, conditionExpr);
+            }
+            List<JCStatement> body = transformComprehensionLoopClause(icl.getComprehensionClause(), null, listName, elementType);
+            at(icl);
+            return List.<JCStatement>of(make().If(test, make().Block(0, body), null));
+        } else {
+            Tree.ExpressionComprehensionClause excc = (Tree.ExpressionComprehensionClause)clause;
+            JCExpression element = transformExpression(excc.getExpression(), BoxingStrategy.BOXED, elementType);
+            at(excc);
+            return List.<JCStatement>of(make().Exec(make().Apply(null, 
+                    makeSelect(listName.makeIdent(), "add"), List.<JCExpression>of(element))));
+        }
+    }
+    
     private JCExpression makeTuple(Type tupleType, java.util.List<Tree.PositionalArgument> expressions) {
         if (typeFact().isEmptyType(tupleType)) {
             return makeEmpty();// A tuple terminated by empty
@@ -3843,9 +4178,56 @@ public class ExpressionTransformer extends AbstractTransformer {
 
     public JCExpression transformFunctional(Tree.StaticMemberOrTypeExpression expr,
             Functional functional) {
+        JCExpression callable = transformFunctionalConstant(expr, functional);
+        if (callable != null) {
+            return callable;
+        }
         return CallableBuilder.methodReference(gen(), expr, 
                     functional.getFirstParameterList());
     }
+    
+    /**
+     * References to toplevel functions don't capture anything, so rather 
+     * than instantiating a new callable, of a new anonymous class, each 
+     * time we see one, we intern it into a static final of the current 
+     * toplevel class. Returns null if the reference can't be interned.
+     */
+    private JCExpression transformFunctionalConstant(Tree.StaticMemberOrTypeExpression expr,
+            Functional functional) {
+        if (!callableConstants
+                || !(expr instanceof Tree.BaseMemberExpression)
+                || !(functional instanceof Function)
+                || current() == null) {
+            return null;
+        }
+        Function function = (Function)functional;
+        if (!Decl.isToplevel(function)
+                || function.isParameter()
+                || !function.getTypeParameters().isEmpty()
+                || function.getParameterLists().size() != 1) {
+            return null;
+        }
+        for (Parameter param : function.getFirstParameterList().getParameters()) {
+            // the default value methods are called unqualified
+            if (param.isDefaulted()) {
+                return null;
+            }
+        }
+        ClassDefinitionBuilder constantsBuilder = current().getTypeDescriptorConstantsBuilder();
+        if (constantsBuilder == null) {
+            return null;
+        }
+        String key = function.getQualifiedNameString();
+        String name = constantsBuilder.getCallableConstant(key);
+        if (name == null) {
+            JCExpression callable = CallableBuilder.methodReference(gen(), expr, 
+                    function.getFirstParameterList());
+            name = constantsBuilder.callableConstant(key, 
+                    makeJavaType(expr.getTypeModel()), callable);
+        }
+        JCExpression qualifier = naming.makeDeclarationName(constantsBuilder.getForDefinition(), DeclNameFlag.QUALIFIED);
+        return makeSelect(makeSelect(qualifier, naming.getCallableConstantsName()), name);
+    }
 
     //
     // Member expressions
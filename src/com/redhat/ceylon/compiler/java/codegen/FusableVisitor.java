@@ -0,0 +1,59 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.codegen;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * A visitor which never changes the way the tree is traversed, 
+ * other than by pruning some subtrees, and so can share a single 
+ * traversal with other such visitors by way of a {@link FusedVisitor}.
+ * 
+ * Subclasses must not override the {@code visit()} methods, only
+ * {@link #enter(Node)} and {@link #exit(Node)}.
+ */
+public abstract class FusableVisitor extends Visitor {
+
+    /**
+     * Called before visiting the children of the given node.
+     * @return false if the children of the given node should not be 
+     * visited, in which case the next call will be {@link #exit(Node)} 
+     * for that same node.
+     */
+    protected boolean enter(Node that) {
+        return true;
+    }
+    
+    /**
+     * Called after visiting the children of the given node.
+     */
+    protected void exit(Node that) {
+    }
+    
+    @Override
+    public void visitAny(Node that) {
+        if (enter(that)) {
+            super.visitAny(that);
+        }
+        exit(that);
+    }
+}
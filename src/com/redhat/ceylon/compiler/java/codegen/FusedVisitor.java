@@ -0,0 +1,66 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.codegen;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Runs several {@link FusableVisitor}s over a tree in a single traversal,
+ * in the order they are given, pruning subtrees for each visitor as they
+ * request it.
+ */
+public class FusedVisitor extends Visitor {
+
+    private final FusableVisitor[] visitors;
+    /** The root of the subtree each visitor is not interested in, if any */
+    private final Node[] pruned;
+    
+    public FusedVisitor(FusableVisitor... visitors) {
+        this.visitors = visitors;
+        this.pruned = new Node[visitors.length];
+    }
+    
+    @Override
+    public void visitAny(Node that) {
+        boolean visitChildren = false;
+        for (int i = 0; i < visitors.length; i++) {
+            if (pruned[i] == null) {
+                if (visitors[i].enter(that)) {
+                    visitChildren = true;
+                } else {
+                    pruned[i] = that;
+                }
+            }
+        }
+        if (visitChildren) {
+            super.visitAny(that);
+        }
+        for (int i = visitors.length - 1; i >= 0; i--) {
+            if (pruned[i] == null) {
+                visitors[i].exit(that);
+            } else if (pruned[i] == that) {
+                pruned[i] = null;
+                visitors[i].exit(that);
+            }
+        }
+    }
+}
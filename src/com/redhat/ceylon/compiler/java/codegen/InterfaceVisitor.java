@@ -20,22 +20,19 @@
 
 package com.redhat.ceylon.compiler.java.codegen;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
-import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Functional;
 import com.redhat.ceylon.model.typechecker.model.Interface;
-import com.redhat.ceylon.model.typechecker.model.Function;
 import com.redhat.ceylon.model.typechecker.model.Parameter;
 import com.redhat.ceylon.model.typechecker.model.ParameterList;
-import com.redhat.ceylon.model.typechecker.model.Setter;
 import com.redhat.ceylon.model.typechecker.model.TypeParameter;
-import com.redhat.ceylon.model.typechecker.model.Value;
 
 /**
  * Visits every local interface and computes their Java companion class name.
@@ -43,9 +40,10 @@ import com.redhat.ceylon.model.typechecker.model.Value;
  * 
  * @author Stéphane Épardaud <stef@epardaud.fr>
  */
-public class InterfaceVisitor extends Visitor {
+public class InterfaceVisitor extends FusableVisitor {
 
     private Set<String> localCompanionClasses = new HashSet<String>();
+    private ArrayList<Set<String>> oldCompanionClasses = new ArrayList<Set<String>>();
     
     private void collect(Node that, Interface model) {
         if(model != null && !model.isMember()){
@@ -61,71 +59,62 @@ public class InterfaceVisitor extends Visitor {
     }
 
     @Override
-    public void visit(Tree.AnyMethod that){
-        Function model = that.getDeclarationModel();
-        // locals and toplevels get a type generated for them
-        if(!model.isMember() && !model.isToplevel()){
-            Set<String> old = localCompanionClasses;
-            localCompanionClasses = new HashSet<String>();
-            super.visit(that);
-            localCompanionClasses = old;
-        }else{
-            super.visit(that);
+    protected boolean enter(Node that){
+        if(that instanceof Tree.TypeAliasDeclaration){
+            // stop at aliases, do not collect them since we can never create any instance of them
+            // and they are useless at runtime
+            return false;
         }
-    }
-
-    @Override
-    public void visit(Tree.AttributeGetterDefinition that){
-        Value model = that.getDeclarationModel();
-        // locals and toplevels get a type generated for them
-        if(!model.isMember() && !model.isToplevel()){
-            Set<String> old = localCompanionClasses;
-            localCompanionClasses = new HashSet<String>();
-            super.visit(that);
-            localCompanionClasses = old;
-        }else{
-            super.visit(that);
+        if(that instanceof Tree.ClassOrInterface){
+            ClassOrInterface model = ((Tree.ClassOrInterface) that).getDeclarationModel();
+            // stop at aliases, do not collect them since we can never create any instance of them
+            // and they are useless at runtime
+            if(model.isAlias())
+                return false;
+            // we never need to collect other local declaration names since only interfaces compete in the $impl name range
+            if(model instanceof Interface)
+                collect(that, (Interface) model);
         }
-    }
-    
-    @Override
-    public void visit(Tree.AttributeSetterDefinition that){
-        Setter model = that.getDeclarationModel();
-        // locals and toplevels get a type generated for them
-        if(!model.isMember() && !model.isToplevel()){
-            Set<String> old = localCompanionClasses;
+        if(hasOwnCompanionClasses(that)){
+            oldCompanionClasses.add(localCompanionClasses);
             localCompanionClasses = new HashSet<String>();
-            super.visit(that);
-            localCompanionClasses = old;
-        }else{
-            super.visit(that);
         }
+        return true;
     }
 
     @Override
-    public void visit(Tree.TypeAliasDeclaration that){
-        // stop at aliases, do not collect them since we can never create any instance of them
-        // and they are useless at runtime
+    protected void exit(Node that){
+        if(that instanceof Tree.TypeAliasDeclaration)
+            return;
+        if(that instanceof Tree.ClassOrInterface){
+            ClassOrInterface model = ((Tree.ClassOrInterface) that).getDeclarationModel();
+            if(!model.isAlias())
+                localCompanionClasses = oldCompanionClasses.remove(oldCompanionClasses.size()-1);
+            if(model instanceof Interface){
+                ((Interface)model).setCompanionClassNeeded(isInterfaceWithCode(model));
+            }
+        }else if(hasOwnCompanionClasses(that)){
+            localCompanionClasses = oldCompanionClasses.remove(oldCompanionClasses.size()-1);
+        }
     }
 
-    @Override
-    public void visit(Tree.ClassOrInterface that){
-        ClassOrInterface model = that.getDeclarationModel();
-        // stop at aliases, do not collect them since we can never create any instance of them
-        // and they are useless at runtime
-        if(!model.isAlias()){
-            // we never need to collect other local declaration names since only interfaces compete in the $impl name range
-            if(model instanceof Interface)
-                collect(that, (Interface) model);
-
-            Set<String> old = localCompanionClasses;
-            localCompanionClasses = new HashSet<String>();
-            super.visit(that);
-            localCompanionClasses = old;
-        }
-        if(model instanceof Interface){
-            ((Interface)model).setCompanionClassNeeded(isInterfaceWithCode(model));
-        }
+    /**
+     * Types, as well as local and toplevel declarations which get a type 
+     * generated for them, have their own namespace for companion classes.
+     */
+    private boolean hasOwnCompanionClasses(Node that){
+        Declaration model;
+        if(that instanceof Tree.ClassOrInterface)
+            return true;
+        else if(that instanceof Tree.AnyMethod
+                || that instanceof Tree.AttributeGetterDefinition
+                || that instanceof Tree.AttributeSetterDefinition
+                || that instanceof Tree.ObjectDefinition)
+            model = ((Tree.Declaration) that).getDeclarationModel();
+        else
+            return false;
+        // locals and toplevels get a type generated for them
+        return !model.isMember() && !model.isToplevel();
     }
 
     private boolean isInterfaceWithCode(ClassOrInterface model) {
@@ -150,17 +139,4 @@ public class InterfaceVisitor extends Visitor {
         return false;
     }
 
-    @Override
-    public void visit(Tree.ObjectDefinition that){
-        Value model = that.getDeclarationModel();
-        // locals and toplevels get a type generated for them
-        if(!model.isMember() && !model.isToplevel()){
-            Set<String> old = localCompanionClasses;
-            localCompanionClasses = new HashSet<String>();
-            super.visit(that);
-            localCompanionClasses = old;
-        }else{
-            super.visit(that);
-        }
-    }
 }
@@ -2044,6 +2044,22 @@ public class Naming extends NamingBase implements LocalId {
     public String getTypeDescriptorAliasName() {
         return name(Unfix.$TypeDescriptor$);
     }
+
+    /**
+     * The name of the nested class holding the interned type descriptors
+     * of a toplevel class.
+     */
+    public String getTypeDescriptorConstantsName() {
+        return "$TypeDescriptors$";
+    }
+    
+    /**
+     * The name of the nested class holding the interned references to
+     * toplevel functions of a toplevel class.
+     */
+    public String getCallableConstantsName() {
+        return "$Callables$";
+    }
     
     /**
      * Computes the name of the constant field on the class for an 
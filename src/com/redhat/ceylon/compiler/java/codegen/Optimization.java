@@ -14,5 +14,7 @@ public enum Optimization {
     ArrayIterationDynamic,
     TupleIterationDynamic,
     
-    PowerUnroll
+    PowerUnroll,
+    
+    ComprehensionLoopFusion
 }
@@ -137,6 +137,17 @@ class RuntimeUtil {
                 List.<JCExpression>of(reifiedTypeArgument, rest, array));
     }
 
+    /**
+     * Makes a call to 
+     * {@code Util.sequentialCopy($reifiedT, Sequential rest, Object[] initial)} 
+     * for an existing array of elements */
+    public JCExpression sequentialCopy(JCExpression reifiedTypeArgument, 
+            JCExpression /*Sequential*/ rest, 
+            JCExpression /*Object[]*/ elements) {
+        return makeUtilInvocation(null, "sequentialCopy", 
+                List.<JCExpression>of(reifiedTypeArgument, rest, elements));
+    }
+
     public JCExpression throwableMessage(JCExpression qualExpr) {
         return makeUtilInvocation(null, "throwableMessage", List.of(qualExpr));
     }
@@ -52,6 +52,7 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.Variable;
 import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.model.loader.NamingBase.Suffix;
 import com.redhat.ceylon.model.loader.NamingBase.Unfix;
+import com.redhat.ceylon.model.typechecker.model.Class;
 import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.model.typechecker.model.ConditionScope;
 import com.redhat.ceylon.model.typechecker.model.ControlBlock;
@@ -2087,6 +2088,15 @@ public class StatementTransformer extends AbstractTransformer {
                         "disableOptimization", optName.toString());
     }
     
+    /**
+     * Determines whether the given optimization has been disabled for the 
+     * whole compilation, for optimizations which don't apply to a 
+     * statement.
+     */
+    boolean isOptimizationDisabled(Optimization optName) {
+        return this.disabledOptimizations.contains(optName);
+    }
+    
     private boolean isOptimizationRequired(Tree.StatementOrArgument stmt, Optimization optName) {
         return optName == null ? CodegenUtil.hasCompilerAnnotationNoArgument(stmt, "requireOptimization")
                 : CodegenUtil.hasCompilerAnnotationWithArgument(stmt, 
@@ -4045,7 +4055,7 @@ public class StatementTransformer extends AbstractTransformer {
             last = make().Labelled(label, last);
             return last;
         }
-        private JCExpression transformCaseExpr(Tree.Term term) {
+        protected JCExpression transformCaseExpr(Tree.Term term) {
             if (term instanceof Tree.BaseMemberExpression
                     && ((Tree.BaseMemberExpression)term).getDeclaration() instanceof Value
                     && ((Value)((Tree.BaseMemberExpression)term).getDeclaration()).isEnumValue()) {
@@ -4056,6 +4066,183 @@ public class StatementTransformer extends AbstractTransformer {
                     BoxingStrategy.UNBOXED, term.getTypeModel());
         }
     }
+    /**
+     * Switch transformation which produces a Java {@code switch} on an 
+     * {@code int}, suitable for a switch on an {@code Integer} whose cases 
+     * are all Integer literals which fit in an {@code int}.
+     * A selector outside the {@code int} range is replaced with a value 
+     * none of the cases match, so that it ends up in the {@code default}.
+     */
+    class IntegerSwitch extends Switch {
+        @Override
+        public JCStatement transformSwitch(Node node, Tree.SwitchClause switchClause, Tree.SwitchCaseList caseList, 
+                String tmpVar, Tree.Term outerExpression) {
+            Type switchExpressionType = getSwitchExpressionType(switchClause);
+            JCExpression selectorExpr = expressionGen().transformExpression(
+                    getSwitchExpression(switchClause), 
+                    BoxingStrategy.UNBOXED, 
+                    switchExpressionType);
+            // we use the selector three times, so it needs a variable
+            Naming.SyntheticName selectorAlias = null;
+            String name = null;
+            JCVariableDecl selector;
+            if (hasVariable(switchClause)) {
+                name = switchClause.getSwitched().getVariable().getIdentifier().getText();
+                selector = makeVar(name, makeJavaType(switchExpressionType), selectorExpr);
+            } else {
+                selectorAlias = naming.alias("sel");
+                selector = makeVar(selectorAlias, makeJavaType(switchExpressionType), selectorExpr);
+            }
+            // (int)sel == sel ? (int)sel : outOfRange
+            JCExpression narrowed = make().Conditional(
+                    make().Binary(JCTree.EQ, 
+                            make().TypeCast(syms().intType, makeSelectorIdent(selectorAlias, name)), 
+                            makeSelectorIdent(selectorAlias, name)),
+                    make().TypeCast(syms().intType, makeSelectorIdent(selectorAlias, name)),
+                    make().Literal(getOutOfRangeCase(caseList)));
+            JCStatement sw = transformSwitch(switchClause, caseList, tmpVar, outerExpression, narrowed);
+            return at(node).Block(0, List.of(selector, sw));
+        }
+        private JCExpression makeSelectorIdent(Naming.SyntheticName selectorAlias, String name) {
+            return selectorAlias != null ? selectorAlias.makeIdent() : naming.makeQuotedIdent(name);
+        }
+        /** Returns the smallest {@code int} which no case matches */
+        private int getOutOfRangeCase(Tree.SwitchCaseList caseList) {
+            Set<Integer> values = new HashSet<Integer>();
+            for (Tree.CaseClause caseClause : caseList.getCaseClauses()) {
+                for (Tree.Expression expr : ((Tree.MatchCase)caseClause.getCaseItem()).getExpressionList().getExpressions()) {
+                    values.add(getIntCaseValue(expr));
+                }
+            }
+            int value = Integer.MIN_VALUE;
+            while (values.contains(value)) {
+                value++;
+            }
+            return value;
+        }
+        @Override
+        protected JCExpression transformCaseExpr(Tree.Term term) {
+            return make().Literal(getIntCaseValue(term));
+        }
+    }
+    
+    /**
+     * Returns the value of an Integer literal (or negated Integer literal) 
+     * case, or null if the term isn't one or the value does not fit in an 
+     * {@code int}.
+     */
+    private Integer getIntCaseValue(Tree.Term term) {
+        term = ExpressionTransformer.eliminateParens(term);
+        java.lang.Long value;
+        try {
+            if (term instanceof Tree.NaturalLiteral) {
+                value = ExpressionTransformer.literalValue((Tree.NaturalLiteral)term);
+            } else if (term instanceof Tree.NegativeOp) {
+                value = ExpressionTransformer.literalValue((Tree.NegativeOp)term);
+            } else {
+                value = null;
+            }
+        } catch (ErroneousException e) {
+            // let the IfElseChain report it
+            return null;
+        }
+        if (value == null
+                || value < Integer.MIN_VALUE
+                || value > Integer.MAX_VALUE) {
+            return null;
+        }
+        return value.intValue();
+    }
+    
+    /**
+     * Switch transformation which produces a Java {@code switch} on the 
+     * case index of the selector, suitable for a switch over an enumerated 
+     * class {@linkplain Decl#canUseCaseIndex(Class) with a case index} whose 
+     * cases are all {@code case (is ...)} of its case types, or of unions 
+     * of them.
+     */
+    class CaseIndexSwitch extends SwitchTransformation {
+        private final Class enumerated;
+        
+        public CaseIndexSwitch(Class enumerated) {
+            this.enumerated = enumerated;
+        }
+        
+        @Override
+        public JCStatement transformSwitch(Node node, Tree.SwitchClause switchClause, Tree.SwitchCaseList caseList,
+                String tmpVar, Tree.Term outerExpression) {
+            Naming.SyntheticName selectorAlias = naming.alias("sel");
+            Type switchExpressionType = getSwitchExpressionType(switchClause);
+            JCExpression selectorExpr = expressionGen().transformExpression(getSwitchExpression(switchClause), 
+                    BoxingStrategy.BOXED, switchExpressionType);
+            JCVariableDecl selector = makeVar(selectorAlias, makeJavaType(switchExpressionType, JT_NO_PRIMITIVES), selectorExpr);
+            
+            Name label = names().fromString("switch_" + gen().visitor.lv.getSwitchId(switchClause));
+            ListBuffer<JCCase> cases = ListBuffer.<JCCase>lb();
+            for (Tree.CaseClause caseClause : getCaseClauses(switchClause, caseList)) {
+                Tree.IsCase isCase = (Tree.IsCase)caseClause.getCaseItem();
+                java.util.List<Integer> indexes = getCaseIndexes(enumerated, isCase.getType().getTypeModel());
+                at(isCase);
+                for (int ii = 0; ii < indexes.size()-1; ii++) {
+                    cases.add(make().Case(make().Literal(indexes.get(ii)), List.<JCStatement>nil()));
+                }
+                JCBlock block = transformCaseIsBlock(selectorAlias, caseClause, tmpVar, outerExpression, isCase);
+                List<JCStatement> stmts = List.<JCStatement>nil();
+                if (!isDefinitelyReturns(caseClause)) {
+                    stmts = stmts.prepend(make().Break(label));
+                }
+                stmts = stmts.prepend(block);
+                cases.add(make().Case(make().Literal(indexes.get(indexes.size()-1)), stmts));
+            }
+            cases.add(make().Case(null, List.of(transformElse(selectorAlias, caseList, tmpVar, outerExpression, false))));
+            
+            JCExpression index = make().Apply(null, 
+                    naming.makeQualIdent(selectorAlias.makeIdent(), Decl.getCaseIndexMethodName(enumerated)), 
+                    List.<JCExpression>nil());
+            JCStatement switch_ = make().Labelled(label, make().Switch(index, cases.toList()));
+            return at(node).Block(0, List.of(selector, switch_));
+        }
+    }
+    
+    /**
+     * Returns the case indexes matched by the given {@code case (is ...)} 
+     * type: the type must be a case type of the given enumerated class, or 
+     * a union of its case types. Otherwise returns null.
+     */
+    private java.util.List<Integer> getCaseIndexes(Class enumerated, Type type) {
+        java.util.List<Type> types = type.isUnion() ? type.getCaseTypes() : Collections.singletonList(type);
+        java.util.List<Integer> indexes = new ArrayList<Integer>(types.size());
+        for (Type t : types) {
+            int index = Decl.getCaseIndex(enumerated, t.getDeclaration());
+            if (index == -1 
+                    || t.isUnion() 
+                    || t.isIntersection()) {
+                return null;
+            }
+            indexes.add(index);
+        }
+        return indexes;
+    }
+    
+    /**
+     * Returns the enumerated class of the selector, if we can switch on its 
+     * case index, or null.
+     */
+    private Class getCaseIndexedClass(Type type, Tree.SwitchCaseList caseList) {
+        if (!(type.getDeclaration() instanceof Class)
+                || !Decl.canUseCaseIndex((Class)type.getDeclaration())) {
+            return null;
+        }
+        Class enumerated = (Class)type.getDeclaration();
+        for (Tree.CaseClause clause : caseList.getCaseClauses()) {
+            if (!(clause.getCaseItem() instanceof Tree.IsCase)
+                    || getCaseIndexes(enumerated, ((Tree.IsCase)clause.getCaseItem()).getType().getTypeModel()) == null) {
+                return null;
+            }
+        }
+        return enumerated;
+    }
+    
     Tree.Term getSingletonNullCase(Tree.CaseClause caseClause) {
         Tree.CaseItem caseItem = caseClause.getCaseItem();
         if (caseItem instanceof Tree.MatchCase) {
@@ -4218,6 +4405,33 @@ public class StatementTransformer extends AbstractTransformer {
         
     }
     
+    /**
+     * The number of Integer cases from which an {@link IntegerSwitch} beats 
+     * an {@link IfElseChain}: with fewer cases the JIT compiles a 
+     * {@code switch} to a chain of comparisons anyway.
+     */
+    private static final int MIN_INTEGER_SWITCH_CASES = 8;
+    
+    private boolean isIntegerSwitch(Type type, Boolean switchUnboxed, Tree.SwitchCaseList caseList) {
+        if (BooleanUtil.isFalse(switchUnboxed)
+                || !type.isExactly(typeFact().getIntegerType())) {
+            return false;
+        }
+        int count = 0;
+        for (Tree.CaseClause clause : caseList.getCaseClauses()) {
+            if (!(clause.getCaseItem() instanceof Tree.MatchCase)) {
+                return false;
+            }
+            for (Tree.Expression expr : ((Tree.MatchCase)clause.getCaseItem()).getExpressionList().getExpressions()) {
+                if (getIntCaseValue(expr) == null) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count >= MIN_INTEGER_SWITCH_CASES;
+    }
+    
     private boolean isJavaSwitchableType(Type type, Boolean switchUnboxed) {
         return BooleanUtil.isNotFalse(switchUnboxed) && (type.isExactly(typeFact().getCharacterType())
                     || type.isExactly(typeFact().getStringType()))
@@ -4269,6 +4483,18 @@ public class StatementTransformer extends AbstractTransformer {
                 transformation = new Switch();
             }
         }
+        // Are we switching on an Integer with just int-sized Integer literal match cases?
+        if (transformation == null
+                && isIntegerSwitch(exprType, switchUnboxed, caseList)) {
+            transformation = new IntegerSwitch();
+        }
+        // Are we switching on an enumerated class with a case index with just is cases?
+        if (transformation == null) {
+            Class enumerated = getCaseIndexedClass(exprType, caseList);
+            if (enumerated != null) {
+                transformation = new CaseIndexSwitch(enumerated);
+            }
+        }
         if (transformation == null
                 && isOptional(exprType)) {
             // Are we switching with just String literal or Character literal plus null 
@@ -4410,13 +4636,25 @@ public class StatementTransformer extends AbstractTransformer {
             Tree.IsCase isCase, 
             JCStatement last, Type expressionType) {
         at(isCase);
-        // Use the type of the variable, which is more precise than the type we test for.
-        Type varType = isCase.getVariable().getDeclarationModel().getType();
         Type caseType = isCase.getType().getTypeModel();
         // note: There's no point using makeOptimizedTypeTest() because cases are disjoint
         // anyway and the cheap cases get evaluated first.
         JCExpression cond = makeTypeTest(null, selectorAlias, caseType , expressionType);
         
+        JCBlock block = transformCaseIsBlock(selectorAlias, caseClause, tmpVar, outerExpression, isCase);
+        last = make().If(cond, block, last);
+        return last;
+    }
+    
+    /**
+     * Transform the block of a "case(is ...)", declaring the narrowed 
+     * variable first
+     */
+    private JCBlock transformCaseIsBlock(Naming.SyntheticName selectorAlias,
+            Tree.CaseClause caseClause, String tmpVar, Tree.Term outerExpression,
+            Tree.IsCase isCase) {
+        // Use the type of the variable, which is more precise than the type we test for.
+        Type varType = isCase.getVariable().getDeclarationModel().getType();
         String name = isCase.getVariable().getIdentifier().getText();
         TypedDeclaration varDecl = isCase.getVariable().getDeclarationModel();
 
@@ -4450,8 +4688,7 @@ public class StatementTransformer extends AbstractTransformer {
         // Deactivate the above variable substitution
         prevSubst.close();
 
-        last = make().If(cond, block, last);
-        return last;
+        return block;
     }
     
     private Name getLabel(Tree.Directive dir) {
@@ -20,8 +20,8 @@
 
 package com.redhat.ceylon.compiler.java.codegen;
 
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
-import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.model.typechecker.model.Function;
 import com.redhat.ceylon.model.typechecker.model.Package;
@@ -45,19 +45,21 @@ import com.redhat.ceylon.model.typechecker.model.TypeParameter;
  *
  * @author Stéphane Épardaud <stef@epardaud.fr>
  */
-public class TypeParameterCaptureVisitor extends Visitor {
+public class TypeParameterCaptureVisitor extends FusableVisitor {
     
     @Override
-    public void visit(Tree.ClassOrInterface that){
-        ClassOrInterface model = that.getDeclarationModel();
-        if(model != null 
-                && !model.isAlias()
-                && !model.isToplevel()
-                && !model.isMember()){
-            // it's a local type, capture!
-            captureTypeParameters(model);
+    protected boolean enter(Node that){
+        if(that instanceof Tree.ClassOrInterface){
+            ClassOrInterface model = ((Tree.ClassOrInterface) that).getDeclarationModel();
+            if(model != null 
+                    && !model.isAlias()
+                    && !model.isToplevel()
+                    && !model.isMember()){
+                // it's a local type, capture!
+                captureTypeParameters(model);
+            }
         }
-        super.visit(that);
+        return true;
     }
 
     private void captureTypeParameters(ClassOrInterface model) {
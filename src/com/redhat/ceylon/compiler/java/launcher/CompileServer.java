@@ -0,0 +1,323 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+/**
+ * A long-running compiler process, which saves repeated builds the cost of
+ * starting a JVM, loading and warming up the compiler, and indexing the
+ * same module archives over and over.
+ *
+ * Every build still gets its own compiler context: the module and model
+ * loader state is mutated by the type checker, so it can't be shared
+ * between builds. What we do keep is the shared {@link ZipFileIndexCache},
+ * which notices archives that changed since they were indexed, and from
+ * which we drop the ones which have not been used in a while.
+ *
+ * The server only listens on the loopback interface and handles one build
+ * at a time. Since any local user can connect to it, and a build can read
+ * and write any file the server can, the server generates a random token
+ * when it starts, which it writes to a file only its owner can read (see
+ * {@link #getTokenFile(int)}), and it refuses the requests which don't
+ * start with that token.
+ *
+ * The protocol is line based, in UTF-8: the client sends the token, then
+ * one compiler argument per line, followed by <code>END</code>. The server
+ * answers with the compiler output, each line prefixed with
+ * <code>OUT:</code>, followed by
+ * <code>EXIT: &lt;javac exit code&gt; &lt;ceylon state&gt; &lt;error count&gt;</code>,
+ * or with <code>ERROR: &lt;message&gt;</code> if it refused the request.
+ * Since the server does not share the working directory of its clients,
+ * they must only send absolute paths, and the <code>-cwd</code> option.
+ *
+ * The server is started with <code>ceylon compile-server</code>, see
+ * {@link com.redhat.ceylon.compiler.CeylonCompileServerTool}.
+ */
+public class CompileServer {
+
+    public static final int DEFAULT_PORT = 0xCEC0;
+
+    private static final String END = "END";
+    private static final String OUT = "OUT:";
+    private static final String EXIT = "EXIT: ";
+    private static final String ERROR = "ERROR: ";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** How long we keep the index of an archive which is not used */
+    private static final long IDLE_MILLIS = 10 * 60 * 1000;
+
+    private final int port;
+    private final File tokenFile;
+    private volatile ServerSocket serverSocket;
+
+    public CompileServer(int port) {
+        this(port, getTokenFile(port));
+    }
+
+    public CompileServer(int port, File tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new CompileServer(port).run();
+    }
+
+    /**
+     * Returns the file in which the server listening on the given port
+     * keeps the token its clients must send.
+     */
+    public static File getTokenFile(int port) {
+        return new File(FileUtil.getDefaultUserDir(), "compile-server-" + port + ".token");
+    }
+
+    /**
+     * Serves builds until the process is killed, or {@link #close()} is
+     * called.
+     */
+    public void run() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.serverSocket = serverSocket;
+        try {
+            byte[] token = writeToken();
+            while (true) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (serverSocket.isClosed())
+                        return;
+                    throw e;
+                }
+                try {
+                    serve(socket, token);
+                } catch (IOException e) {
+                    // the client went away, wait for the next one
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            serverSocket.close();
+            tokenFile.delete();
+        }
+    }
+
+    /**
+     * Stops the server once the current build is done.
+     */
+    public void close() throws IOException {
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null)
+            serverSocket.close();
+    }
+
+    /**
+     * Writes a new random token to the token file. The file is created
+     * by {@link Files#createTempFile} which, on POSIX systems, makes it
+     * readable by its owner only, and is moved in place once complete so
+     * that clients never read half a token.
+     */
+    private byte[] writeToken() throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        byte[] token = toHex(random).getBytes(UTF8);
+        File dir = tokenFile.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        Path tmp = Files.createTempFile(dir.toPath(), "compile-server-", ".token");
+        try {
+            File file = tmp.toFile();
+            // for the file systems without POSIX permissions
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+            Files.write(tmp, token);
+            Files.move(tmp, tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return token;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private void serve(Socket socket, byte[] token) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        String line = in.readLine();
+        if (line == null
+                || !MessageDigest.isEqual(token, line.getBytes(UTF8))) {
+            refuse(socket, "invalid compile server token");
+            return;
+        }
+        List<String> args = new ArrayList<String>();
+        while ((line = in.readLine()) != null && !line.equals(END)) {
+            args.add(line);
+        }
+        if (line == null) {
+            refuse(socket, "incomplete request");
+            return;
+        }
+
+        StringWriter output = new StringWriter();
+        PrintWriter out = new PrintWriter(output, true);
+        Main compiler = new Main("ceylon compile", out);
+        try {
+            compile(compiler, args.toArray(new String[args.size()]));
+        } catch (Throwable t) {
+            compiler.exitState = null;
+            t.printStackTrace(out);
+        }
+        out.flush();
+
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+        PrintWriter reply = new PrintWriter(writer);
+        BufferedReader lines = new BufferedReader(new StringReader(output.toString()));
+        while ((line = lines.readLine()) != null) {
+            reply.print(OUT);
+            reply.print(line);
+            reply.print('\n');
+        }
+        ExitState exitState = compiler.exitState;
+        if (exitState != null) {
+            reply.print(EXIT + exitState.javacExitCode + " " + exitState.ceylonState
+                    + " " + exitState.errorCount + "\n");
+        } else {
+            reply.print(EXIT + Main.EXIT_ABNORMAL + " " + CeylonState.BUG + " 0\n");
+        }
+        reply.flush();
+    }
+
+    private void refuse(Socket socket, String message) throws IOException {
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+        writer.write(ERROR + message + "\n");
+        writer.flush();
+    }
+
+    private void compile(Main compiler, String[] args) {
+        try {
+            compiler.compile(args);
+        } finally {
+            ZipFileIndexCache.getSharedInstance().clearCache(IDLE_MILLIS);
+        }
+    }
+
+    /**
+     * Sends builds to a {@link CompileServer}, mirroring the programmatic
+     * interface of {@link Main}.
+     */
+    public static class Client {
+
+        private final int port;
+        private final File tokenFile;
+
+        public ExitState exitState = null;
+
+        public Client(int port) {
+            this(port, getTokenFile(port));
+        }
+
+        public Client(int port, File tokenFile) {
+            this.port = port;
+            this.tokenFile = tokenFile;
+        }
+
+        /**
+         * Compiles with the given arguments, copying the compiler output
+         * to the given writer.
+         * @return the javac exit code
+         */
+        public int compile(String[] args, PrintWriter out) throws IOException {
+            exitState = null;
+            if (!tokenFile.exists())
+                throw new IOException("Missing compile server token file " + tokenFile + ", is the server running?");
+            String token = new String(Files.readAllBytes(tokenFile.toPath()), UTF8).trim();
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            try {
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                writer.write(token);
+                writer.write('\n');
+                for (String arg : args) {
+                    writer.write(arg);
+                    writer.write('\n');
+                }
+                writer.write(END);
+                writer.write('\n');
+                writer.flush();
+
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(OUT)) {
+                        out.println(line.substring(OUT.length()));
+                    } else if (line.startsWith(EXIT)) {
+                        String[] parts = line.substring(EXIT.length()).split(" ");
+                        int javacExitCode = Integer.parseInt(parts[0]);
+                        exitState = ExitState.remote(javacExitCode,
+                                CeylonState.valueOf(parts[1]),
+                                Integer.parseInt(parts[2]));
+                        return javacExitCode;
+                    } else if (line.startsWith(ERROR)) {
+                        throw new IOException("Compile server refused the request: " + line.substring(ERROR.length()));
+                    }
+                }
+                throw new IOException("Compile server closed the connection");
+            } finally {
+                out.flush();
+                socket.close();
+            }
+        }
+    }
+}
@@ -379,6 +379,13 @@ public class Main extends com.sun.tools.javac.main.Main {
             return new ExitState(EXIT_SYSERR, CeylonState.SYS, 0, ex, null);
         }
 
+        /**
+         * The state of a compilation which ran in a {@link CompileServer}
+         */
+        public static ExitState remote(int javacExitCode, CeylonState ceylonState, int errorCount) {
+            return new ExitState(javacExitCode, ceylonState, errorCount, null);
+        }
+
         public static ExitState cmderror() {
             // icky: We'd prefer this to be handled at the tool API level 
             return new ExitState(EXIT_CMDERR, CeylonState.BUG, 0, null, null);
@@ -387,6 +394,18 @@ public class Main extends com.sun.tools.javac.main.Main {
     
     public ExitState exitState = null;
 
+    /**
+     * Set after a successful incremental compilation which found source files that
+     * must be compiled again, because a declaration they depend on changed.
+     */
+    public boolean incrementalRecompilationNeeded = false;
+
+    /**
+     * How many times {@link #compile(String[])} compiles at most when
+     * {@link #incrementalRecompilationNeeded} keeps being set.
+     */
+    public static final int MAX_INCREMENTAL_PASSES = 10;
+
     /**
      * Report a usage error.
      */
@@ -549,6 +568,18 @@ public class Main extends com.sun.tools.javac.main.Main {
      * @param args The command line parameters.
      */
     public int compile(String[] args) {
+        // with -incremental, files depending on declarations whose signature
+        // changed are only detected after compiling, so they need another go
+        int result = compileOnce(args);
+        for (int pass = 1;
+                incrementalRecompilationNeeded && pass < MAX_INCREMENTAL_PASSES;
+                pass++) {
+            result = compileOnce(args);
+        }
+        return result;
+    }
+
+    private int compileOnce(String[] args) {
         Context context = new Context();
         CeyloncFileManager.preRegister(context); // can't create it until Log
                                                  // has been set up
@@ -578,6 +609,7 @@ public class Main extends com.sun.tools.javac.main.Main {
         filenames = new ListBuffer<File>();
         classnames = new ListBuffer<String>();
         exitState = null;
+        incrementalRecompilationNeeded = false;
         JavaCompiler comp = null;
         /* TODO: Logic below about what is an acceptable command line should be
          * updated to take annotation processing semantics into account. */
@@ -655,6 +687,9 @@ public class Main extends com.sun.tools.javac.main.Main {
                 this.exitState = ExitState.error(comp);
                 return EXIT_ERROR;
             }
+            if (comp instanceof LanguageCompiler) {
+                incrementalRecompilationNeeded = ((LanguageCompiler) comp).isIncrementalRecompilationNeeded();
+            }
         } catch (IOException ex) {
             ioMessage(ex);
             this.exitState = ExitState.systemError(null, ex);
@@ -23,6 +23,7 @@ package com.redhat.ceylon.compiler.java.loader;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,7 @@ import com.redhat.ceylon.compiler.java.codegen.CompilerBoxingDeclarationVisitor;
 import com.redhat.ceylon.compiler.java.codegen.CompilerBoxingVisitor;
 import com.redhat.ceylon.compiler.java.codegen.DeferredVisitor;
 import com.redhat.ceylon.compiler.java.codegen.DefiniteAssignmentVisitor;
+import com.redhat.ceylon.compiler.java.codegen.FusedVisitor;
 import com.redhat.ceylon.compiler.java.codegen.InterfaceVisitor;
 import com.redhat.ceylon.compiler.java.codegen.TypeParameterCaptureVisitor;
 import com.redhat.ceylon.compiler.java.codegen.UnsupportedVisitor;
@@ -54,6 +56,7 @@ import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler.CompilerDelegate;
+import com.redhat.ceylon.compiler.java.util.Profiler;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.analyzer.AnalysisError;
 import com.redhat.ceylon.compiler.typechecker.analyzer.UnsupportedError;
@@ -77,6 +80,7 @@ import com.redhat.ceylon.model.loader.Timer;
 import com.redhat.ceylon.model.loader.model.LazyModule;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Modules;
 import com.redhat.ceylon.model.typechecker.model.Setter;
 import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
@@ -129,6 +133,8 @@ public class CeylonEnter extends Enter {
     private AbstractModelLoader modelLoader;
     private Options options;
     private Timer timer;
+    private Profiler profiler;
+    private Context context;
     private Paths paths;
     private CeyloncFileManager fileManager;
     private boolean verbose;
@@ -159,6 +165,8 @@ public class CeylonEnter extends Enter {
         modelLoader = CeylonModelLoader.instance(context);
         options = Options.instance(context);
         timer = com.redhat.ceylon.compiler.java.util.Timer.instance(context);
+        profiler = Profiler.instance(context);
+        this.context = context;
         paths = Paths.instance(context);
         fileManager = (CeyloncFileManager) context.get(JavaFileManager.class);
         verbose = options.get(OptionName.VERBOSE) != null;
@@ -353,6 +361,9 @@ public class CeylonEnter extends Enter {
          * Here we convert the ceylon tree to its javac AST, after the typechecker has run
          */
         Timer nested = timer.nestedTimer();
+        // these don't change from one unit to the next
+        boolean verboseAst = isVerbose("ast");
+        boolean verboseCode = isVerbose("code");
         for (JCCompilationUnit tree : trees) {
             if (tree instanceof CeylonCompilationUnit) {
                 CeylonCompilationUnit ceylonTree = (CeylonCompilationUnit) tree;
@@ -360,8 +371,10 @@ public class CeylonEnter extends Enter {
                 CeylonPhasedUnit phasedUnit = (CeylonPhasedUnit)ceylonTree.phasedUnit;
                 gen.setFileObject(phasedUnit.getFileObject());
                 nested.startTask("Ceylon code generation for " + phasedUnit.getUnitFile().getName());
-                TaskEvent event = new TaskEvent(TaskEvent.Kind.PARSE, tree);
+                long unitStart = System.nanoTime();
+                TaskEvent event = null;
                 if (taskListener != null) {
+                    event = new TaskEvent(TaskEvent.Kind.PARSE, tree);
                     taskListener.started(event);
                 }
                 ceylonTree.defs = gen.transformAfterTypeChecking(ceylonTree.ceylonTree).toList();
@@ -369,11 +382,12 @@ public class CeylonEnter extends Enter {
                     taskListener.finished(event);
                 }
                 nested.endTask();
-                if(isVerbose("ast")){
+                profiler.unit(phasedUnit.getUnitFile().getPath(), System.nanoTime() - unitStart);
+                if(verboseAst){
                     log.errWriter.println("Model tree for "+tree.getSourceFile());
                     log.errWriter.println(ceylonTree.ceylonTree);
                 }
-                if(isVerbose("code")){
+                if(verboseCode){
                     log.errWriter.println("Java code generated for "+tree.getSourceFile());
                     log.errWriter.println(ceylonTree);
                 }
@@ -385,6 +399,24 @@ public class CeylonEnter extends Enter {
         // write some stats
         if(verbose)
             modelLoader.printStats();
+        if(profiler.isEnabled())
+            profileModelLoader();
+    }
+
+    /**
+     * Records how many modules and packages we know of, and how many units 
+     * we type checked. We don't count declarations because that would 
+     * complete the lazy packages.
+     */
+    private void profileModelLoader() {
+        Modules modules = LanguageCompiler.getCeylonContextInstance(context).getModules();
+        int packages = 0;
+        for (Module module : modules.getListOfModules()) {
+            packages += module.getPackages().size();
+        }
+        profiler.counter("modules", modules.getListOfModules().size());
+        profiler.counter("packages", packages);
+        profiler.counter("units", phasedUnits.getPhasedUnits().size());
     }
 
     private boolean isVerbose(String key) {
@@ -443,6 +475,8 @@ public class CeylonEnter extends Enter {
         if(modulesAddedToClassPath.add(module)){
             if(artifact != null && artifact.exists()){
                 classPath.add(artifact);
+                if(modelLoader instanceof CeylonModelLoader)
+                    ((CeylonModelLoader)modelLoader).classPathChanged();
                 ((LazyModule)module).loadPackageList(result);
             }else if(errorIfMissing){
                 log.error("ceylon", "Failed to find module "+module.getNameAsString()+"/"+module.getVersion()+" in repositories");
@@ -462,11 +496,16 @@ public class CeylonEnter extends Enter {
         for (PhasedUnit pu : listOfUnits) {
             Unit unit = pu.getUnit();
             final CompilationUnit compilationUnit = pu.getCompilationUnit();
+            java.util.List<TypedDeclaration> typedDeclarations = new ArrayList<TypedDeclaration>();
             for (Declaration d: unit.getDeclarations()) {
                 if (d instanceof TypedDeclaration && !(d instanceof Setter)) {
-                    compilationUnit.visit(new MethodOrValueReferenceVisitor((TypedDeclaration) d));
+                    typedDeclarations.add((TypedDeclaration) d);
                 }
             }
+            // one walk of the tree for all the declarations of the unit
+            if (!typedDeclarations.isEmpty()) {
+                compilationUnit.visit(new MethodOrValueReferenceVisitor(typedDeclarations));
+            }
         }
         
         UnsupportedVisitor uv = new UnsupportedVisitor();
@@ -487,14 +526,13 @@ public class CeylonEnter extends Enter {
             pu.getCompilationUnit().visit(boxingDeclarationVisitor);
         }
         // the others can run at the same time
+        // (and those which don't drive the traversal themselves share one)
+        FusedVisitor fusedVisitor = new FusedVisitor(deferredVisitor, dav, tpCaptureVisitor, localInterfaceVisitor);
         for (PhasedUnit pu : listOfUnits) {
             CompilationUnit compilationUnit = pu.getCompilationUnit();
             compilationUnit.visit(boxingVisitor);
-            compilationUnit.visit(deferredVisitor);
             compilationUnit.visit(amv);
-            compilationUnit.visit(dav);
-            compilationUnit.visit(tpCaptureVisitor);
-            compilationUnit.visit(localInterfaceVisitor);
+            compilationUnit.visit(fusedVisitor);
         }
         
         for (PhasedUnit pu : listOfUnits) {
@@ -25,9 +25,12 @@ import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.lang.model.element.NestingKind;
 import javax.tools.JavaFileManager;
@@ -97,7 +100,22 @@ public class CeylonModelLoader extends AbstractModelLoader {
     private Types types;
     private Options options;
     private JavaFileManager fileManager;
-    protected final Map<String,Boolean> packageExistence = new HashMap<String,Boolean>();
+    /**
+     * Packages whose existence we checked, by cache key. Only written while
+     * holding the lock, but read without it.
+     */
+    protected final Map<String,Boolean> packageExistence = new ConcurrentHashMap<String,Boolean>();
+    /**
+     * Packages whose declarations are fully loaded, by cache key, so that
+     * asking for them again does not need the lock.
+     */
+    private final Set<String> fullyLoadedPackages = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    /**
+     * Quoted class names for which there is no class file on the class paths,
+     * so that repeated misses don't probe every class path entry again.
+     * Only used while holding the lock.
+     */
+    private final Set<String> missingClassFiles = new HashSet<String>();
     private AnnotationLoader annotationLoader;
     private ModuleSourceMapper moduleSourceMapper;
     
@@ -144,18 +162,26 @@ public class CeylonModelLoader extends AbstractModelLoader {
     @Override
     public void addModuleToClassPath(Module module, ArtifactResult artifact){
         if(artifact != null){
+            // this calls classPathChanged() if the module was not on the class path yet
             ((CompilerModuleManager)phasedUnits.getModuleManager()).getCeylonEnter().addModuleToClassPath(module, true, artifact);
-            // invalidate all the package not found caches since they may be visible now
-            synchronized(getLock()){
-                java.util.List<String> clear = new ArrayList<String>(packageExistence.size());
-                for(Map.Entry<String,Boolean> entry : packageExistence.entrySet()){
-                    if(!entry.getValue().booleanValue())
-                        clear.add(entry.getKey());
-                }
-                for(String key : clear){
-                    packageExistence.remove(key);
-                }
+        }
+    }
+
+    /**
+     * Invalidates what we know is missing from the class path, since it
+     * may be visible now.
+     */
+    public void classPathChanged(){
+        synchronized(getLock()){
+            java.util.List<String> clear = new ArrayList<String>(packageExistence.size());
+            for(Map.Entry<String,Boolean> entry : packageExistence.entrySet()){
+                if(!entry.getValue().booleanValue())
+                    clear.add(entry.getKey());
             }
+            for(String key : clear){
+                packageExistence.remove(key);
+            }
+            missingClassFiles.clear();
         }
     }
 
@@ -220,12 +246,21 @@ public class CeylonModelLoader extends AbstractModelLoader {
 
     @Override
     public boolean loadPackage(Module module, String packageName, boolean loadDeclarations) {
+        packageName = Util.quoteJavaKeywords(packageName);
+        String cacheKey = cacheKeyByModule(module, packageName);
+        // javac symbols are not thread-safe, so only answer from the caches without locking
+        if(loadDeclarations){
+            if(fullyLoadedPackages.contains(cacheKey))
+                return true;
+        }else{
+            Boolean exists = packageExistence.get(cacheKey);
+            if(exists != null)
+                return exists.booleanValue();
+        }
         synchronized(getLock()){
             // abort if we already loaded it, but only record that we loaded it if we want
             // to load the declarations, because merely calling complete() on the package
             // is OK
-            packageName = Util.quoteJavaKeywords(packageName);
-            String cacheKey = cacheKeyByModule(module, packageName);
             if(loadDeclarations){
                 if(!loadedPackages.add(cacheKey)){
                     return true;
@@ -266,6 +301,7 @@ public class CeylonModelLoader extends AbstractModelLoader {
                 if(module.getNameAsString().equals(JAVA_BASE_MODULE_NAME)
                         && packageName.equals("java.lang"))
                     loadJavaBaseArrays();
+                fullyLoadedPackages.add(cacheKey);
                 // a bit complicated, but couldn't find better. PackageSymbol.exists() seems to be set only by Enter which
                 // might be too late
                 return ceylonPkg.members().getElements().iterator().hasNext();
@@ -419,6 +455,8 @@ public class CeylonModelLoader extends AbstractModelLoader {
             Name name = names.fromString(quotedClassName);
             if(syms().classes.containsKey(name))
                 return true;
+            if(missingClassFiles.contains(quotedClassName))
+                return false;
             JavaFileObject fileObject = fileManager.getJavaFileForInput(PLATFORM_CLASS_PATH, quotedClassName, JavaFileObject.Kind.CLASS);
             if(fileObject == null){
                 fileObject = fileManager.getJavaFileForInput(CLASS_PATH, quotedClassName, JavaFileObject.Kind.CLASS);
@@ -427,6 +465,7 @@ public class CeylonModelLoader extends AbstractModelLoader {
                 reader.enterClass(name, fileObject);
                 return true;
             }
+            missingClassFiles.add(quotedClassName);
             return false;
         } catch (IOException e) {
             // this is not normal, but will result in an error elsewhere, so just log it
@@ -1,6 +1,9 @@
 package com.redhat.ceylon.compiler.java.loader;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,28 +37,87 @@ import com.redhat.ceylon.model.typechecker.model.Value;
  * a method body can outlive the execution of
  * the method.
  * 
+ * A single instance handles all the given
+ * declarations of a compilation unit in one
+ * walk of its tree: each capturing scope we
+ * enter remembers which declarations had their
+ * containing scope (or themselves) declared
+ * directly within it, and those declarations
+ * are not captured by references made at that
+ * level.
+ * 
  * @author Gavin King
  *
  */
 public class MethodOrValueReferenceVisitor extends Visitor {
     
-    private final TypedDeclaration declaration;
-    private boolean inCapturingScope = false;
+    private final Map<String, List<TypedDeclaration>> declarationsByName = new HashMap<String, List<TypedDeclaration>>();
+    private final Map<Scope, List<TypedDeclaration>> declarationsByContainer = new IdentityHashMap<Scope, List<TypedDeclaration>>();
+    private final Map<TypedDeclaration, Boolean> capturableMplParameters = new IdentityHashMap<TypedDeclaration, Boolean>();
+    /** 
+     * One entry per capturing scope we're in, holding the 
+     * declarations which are not captured in that scope 
+     * (or null if there are none) 
+     */
+    private final ArrayList<Map<TypedDeclaration, Boolean>> capturingScopes = new ArrayList<Map<TypedDeclaration, Boolean>>();
     private boolean inLazySpecifierExpression = false;
     private boolean defaultArgument;
     
-    public MethodOrValueReferenceVisitor(TypedDeclaration declaration) {
-        this.declaration = declaration;
+    public MethodOrValueReferenceVisitor(Collection<TypedDeclaration> declarations) {
+        for (TypedDeclaration declaration : declarations) {
+            index(declarationsByName, declaration.getName(), declaration);
+            index(declarationsByContainer, declaration.getContainer(), declaration);
+            if (isCapturableMplParameter(declaration)) {
+                capturableMplParameters.put(declaration, Boolean.TRUE);
+            }
+        }
+    }
+    
+    private static <K> void index(Map<K, List<TypedDeclaration>> index, K key, TypedDeclaration declaration) {
+        List<TypedDeclaration> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<TypedDeclaration>(1);
+            index.put(key, list);
+        }
+        list.add(declaration);
     }
     
-    private boolean enterCapturingScope() {
-        boolean cs = inCapturingScope;
-        inCapturingScope = true;
+    private int enterCapturingScope() {
+        int cs = capturingScopes.size();
+        capturingScopes.add(null);
         return cs;
     }
     
-    private void exitCapturingScope(boolean cs) {
-        inCapturingScope = cs;
+    private void exitCapturingScope(int cs) {
+        for (int i = capturingScopes.size() - 1; i >= cs; i--) {
+            capturingScopes.remove(i);
+        }
+    }
+    
+    private boolean isInCapturingScope(TypedDeclaration declaration) {
+        if (capturingScopes.isEmpty()) {
+            return false;
+        }
+        Map<TypedDeclaration, Boolean> notCaptured = capturingScopes.get(capturingScopes.size() - 1);
+        return notCaptured == null || !notCaptured.containsKey(declaration);
+    }
+    
+    /**
+     * Leaves the current capturing scope for the given declaration
+     * (but not for the others)
+     */
+    private void leaveCapturingScope(TypedDeclaration declaration) {
+        if (capturingScopes.isEmpty()
+                || capturableMplParameters.containsKey(declaration)) {
+            return;
+        }
+        int top = capturingScopes.size() - 1;
+        Map<TypedDeclaration, Boolean> notCaptured = capturingScopes.get(top);
+        if (notCaptured == null) {
+            notCaptured = new IdentityHashMap<TypedDeclaration, Boolean>();
+            capturingScopes.set(top, notCaptured);
+        }
+        notCaptured.put(declaration, Boolean.TRUE);
     }
     
     @Override public void visit(Tree.BaseMemberExpression that) {
@@ -67,63 +129,71 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     }
 
     private void visitReference(Tree.Primary that) {
-        if (inCapturingScope) {
-            capture(that);
-        }
+        capture(that, false, true);
     }
 
     private void capture(Tree.Primary that) {
-        capture(that, false);
+        capture(that, false, false);
     }
     
-    private void capture(Tree.Primary that, boolean methodSpecifier) {
+    private void capture(Tree.Primary that, boolean methodSpecifier, boolean onlyInCapturingScope) {
         if (that instanceof Tree.MemberOrTypeExpression) {
             final Declaration decl = ((Tree.MemberOrTypeExpression) that).getDeclaration();
             if (!(decl instanceof TypedDeclaration)) {
                 return;
             }
             TypedDeclaration d = (TypedDeclaration) decl;
-            if (Decl.equal(d, declaration) || (d.isNativeHeader() && d.getOverloads().contains(declaration))) {
-                d = declaration;
-                if (Decl.isParameter(d)) {
-                    // a reference from a default argument 
-                    // expression of the same parameter 
-                    // list does not capture a parameter
-                    boolean sameScope = d.getContainer().equals(that.getScope());
-                    if (!sameScope || methodSpecifier || inLazySpecifierExpression) {
-                        ((FunctionOrValue)d).setCaptured(true);
-                    }
-                    
-                    // Accessing another instance's member passed to a class initializer
-                    if (that instanceof Tree.QualifiedMemberExpression) {
-                        if (d instanceof TypedDeclaration
-                                && ((TypedDeclaration)d).getOtherInstanceAccess()) {
-                            ((FunctionOrValue)d).setCaptured(true);
-                        }
-                    }
-                    
-                    if (isCapturableMplParameter(d)) {
-                        ((FunctionOrValue)d).setCaptured(true);
-                    }
-                } else if (Decl.isValue(d) || Decl.isGetter(d)) {
-                    Value v = (Value) d;
-                    v.setCaptured(true);
-                    if (Decl.isObjectValue(d)){
-                        v.setSelfCaptured(isSelfCaptured(that, d));
-                    }
-                    if (v.getSetter() != null) {
-                        v.getSetter().setCaptured(true);
-                    }
+            List<TypedDeclaration> declarations = declarationsByName.get(d.getName());
+            if (declarations == null) {
+                return;
+            }
+            for (TypedDeclaration declaration : declarations) {
+                if ((Decl.equal(d, declaration) || (d.isNativeHeader() && d.getOverloads().contains(declaration)))
+                        && (!onlyInCapturingScope || isInCapturingScope(declaration))) {
+                    capture(that, declaration, methodSpecifier);
                 }
-                else if (d instanceof Function) {
-                    ((Function) d).setCaptured(true);
+            }
+        }
+    }
+    
+    private void capture(Tree.Primary that, TypedDeclaration d, boolean methodSpecifier) {
+        if (Decl.isParameter(d)) {
+            // a reference from a default argument 
+            // expression of the same parameter 
+            // list does not capture a parameter
+            boolean sameScope = d.getContainer().equals(that.getScope());
+            if (!sameScope || methodSpecifier || inLazySpecifierExpression) {
+                ((FunctionOrValue)d).setCaptured(true);
+            }
+            
+            // Accessing another instance's member passed to a class initializer
+            if (that instanceof Tree.QualifiedMemberExpression) {
+                if (d instanceof TypedDeclaration
+                        && ((TypedDeclaration)d).getOtherInstanceAccess()) {
+                    ((FunctionOrValue)d).setCaptured(true);
                 }
-                
-                /*if (d.isVariable() && !d.isClassMember() && !d.isToplevel()) {
-                    that.addError("access to variable local from capturing scope: " + declaration.getName());
-                }*/
+            }
+            
+            if (capturableMplParameters.containsKey(d)) {
+                ((FunctionOrValue)d).setCaptured(true);
+            }
+        } else if (Decl.isValue(d) || Decl.isGetter(d)) {
+            Value v = (Value) d;
+            v.setCaptured(true);
+            if (Decl.isObjectValue(d)){
+                v.setSelfCaptured(isSelfCaptured(that, d));
+            }
+            if (v.getSetter() != null) {
+                v.getSetter().setCaptured(true);
             }
         }
+        else if (d instanceof Function) {
+            ((Function) d).setCaptured(true);
+        }
+        
+        /*if (d.isVariable() && !d.isClassMember() && !d.isToplevel()) {
+            that.addError("access to variable local from capturing scope: " + declaration.getName());
+        }*/
     }
 
     /**
@@ -184,7 +254,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     
     @Override
     public void visit(Tree.QualifiedMemberExpression that) {
-        boolean cs = false;
+        int cs = 0;
         boolean isCallableReference = !invocationPrimary && that.getDeclaration() instanceof Functional;
         if (isCallableReference) {
             cs = enterCapturingScope();
@@ -207,11 +277,31 @@ public class MethodOrValueReferenceVisitor extends Visitor {
 
     @Override public void visit(Tree.Declaration that) {
         Declaration dm = that.getDeclarationModel();
-        if (dm==declaration.getContainer()
-                || Decl.equal(dm, declaration)
-                || (dm instanceof Setter && ((Setter) dm).getGetter()==declaration)) {
-            if (!isCapturableMplParameter(declaration)) {
-                inCapturingScope = false;
+        if (dm != null) {
+            List<TypedDeclaration> contained = declarationsByContainer.get(dm);
+            if (contained != null) {
+                for (TypedDeclaration declaration : contained) {
+                    leaveCapturingScope(declaration);
+                }
+            }
+            List<TypedDeclaration> named = declarationsByName.get(dm.getName());
+            if (named != null) {
+                for (TypedDeclaration declaration : named) {
+                    if (Decl.equal(dm, declaration)) {
+                        leaveCapturingScope(declaration);
+                    }
+                }
+            }
+            if (dm instanceof Setter && ((Setter) dm).getGetter() != null) {
+                Value getter = ((Setter) dm).getGetter();
+                named = declarationsByName.get(getter.getName());
+                if (named != null) {
+                    for (TypedDeclaration declaration : named) {
+                        if (getter == declaration) {
+                            leaveCapturingScope(declaration);
+                        }
+                    }
+                }
             }
         }
         super.visit(that);
@@ -219,7 +309,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     
     @Override public void visit(Tree.ClassDefinition that) {
         if (!that.getDeclarationModel().hasConstructors()) {
-            boolean cs = enterCapturingScope();
+            int cs = enterCapturingScope();
             super.visit(that);
             exitCapturingScope(cs);
         } else {
@@ -243,7 +333,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
             if (stmt instanceof Tree.Constructor &&
                         (delegatedTo.containsKey(Decl.getConstructor(((Tree.Constructor)stmt).getDeclarationModel()))
                         || delegatedTo.containsValue(Decl.getConstructor(((Tree.Constructor)stmt).getDeclarationModel())))) {
-                    boolean cs = enterCapturingScope();
+                    int cs = enterCapturingScope();
                     stmt.visit(this);
                     exitCapturingScope(cs);
                 } else {
@@ -254,13 +344,13 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     }
     
     @Override public void visit(Tree.ObjectDefinition that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
     
     @Override public void visit(Tree.MethodDefinition that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         if (Decl.withinClass(that)) {
             // This is a HACK to make sure that method definitions
@@ -281,38 +371,38 @@ public class MethodOrValueReferenceVisitor extends Visitor {
         super.visit(that);
         final SpecifierOrInitializerExpression specifier = that.getSpecifierOrInitializerExpression();
         if (specifier != null && specifier instanceof Tree.LazySpecifierExpression) {
-            boolean cs = enterCapturingScope();
+            int cs = enterCapturingScope();
             specifier.visit(this);
             exitCapturingScope(cs);
         }   
     }
     
     @Override public void visit(Tree.AttributeGetterDefinition that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
     
     @Override public void visit(Tree.AttributeSetterDefinition that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
     
     @Override public void visit(Tree.ObjectArgument that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
     
     @Override public void visit(Tree.MethodArgument that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
     
     @Override public void visit(Tree.AttributeArgument that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
@@ -334,7 +424,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     }*/
     
     @Override public void visit(Tree.SpecifierOrInitializerExpression that) {
-        boolean cs = false;
+        int cs = 0;
         // Things in specifiers or initializers are only captured if they are
         // specifiers or initializers of parameters
         if (defaultArgument || inLazySpecifierExpression) {
@@ -347,7 +437,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     }
     
     @Override public void visit(Tree.FunctionArgument that) {
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
@@ -356,7 +446,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
         super.visit(that);
         final SpecifierExpression specifier = that.getSpecifierExpression();
         if (specifier != null && specifier instanceof Tree.LazySpecifierExpression) {
-            boolean cs = enterCapturingScope();
+            int cs = enterCapturingScope();
             specifier.visit(this);
             exitCapturingScope(cs);
         }   
@@ -365,7 +455,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
 
     @Override public void visit(Tree.Comprehension that) {
         super.visit(that);
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         that.getInitialComprehensionClause().visit(this);
         exitCapturingScope(cs);
     }
@@ -377,7 +467,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
             final Expression expr = specifier.getExpression();
             final Term term = expr.getTerm();
             if (term instanceof Tree.Primary) {
-                capture((Tree.Primary)term, true);
+                capture((Tree.Primary)term, true, false);
             }
         }   
         that.getComprehensionClause().visit(this);
@@ -394,10 +484,10 @@ public class MethodOrValueReferenceVisitor extends Visitor {
 
     @Override
     public void visit(SpecifierStatement that) {
-        boolean cs = inCapturingScope;
+        int cs = 0;
         // refining specifiers do capture, as opposed to regular constructor specifiers
         if(that.getRefinement())
-            enterCapturingScope();
+            cs = enterCapturingScope();
         super.visit(that);
         if(that.getRefinement())
             exitCapturingScope(cs);
@@ -414,7 +504,7 @@ public class MethodOrValueReferenceVisitor extends Visitor {
     @Override public void visit(Tree.SequencedArgument that) {
         // Because a SequenceArgument requires an anonymous class
         // enumerated the expressions are in a different scope
-        boolean cs = enterCapturingScope();
+        int cs = enterCapturingScope();
         super.visit(that);
         exitCapturingScope(cs);
     }
@@ -236,6 +236,13 @@ public class CeyloncFileManager extends JavacFileManager implements StandardJava
     public void setModule(Module module) {
         currentModule = module;
     }
+
+    /**
+     * Sets the incremental compilation information to write in the archive of the given module.
+     */
+    public void setDependencyInfo(Module module, DependencyInfo dependencyInfo) {
+        getJarRepository().setDependencyInfo(module, dependencyInfo);
+    }
     
     public RepositoryManager getRepositoryManager() {
         // caching
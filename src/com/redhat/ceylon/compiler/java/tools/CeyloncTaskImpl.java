@@ -65,4 +65,15 @@ public class CeyloncTaskImpl extends JavacTaskImpl {
         return getExitState();
     }
 
+    /**
+     * Returns true if this task ran an incremental compilation which found
+     * source files it did not compile, but which must be compiled again
+     * because a declaration they use changed. Unlike the command line, a
+     * task only compiles once, so it is up to the caller to run a new task
+     * with the same arguments.
+     */
+    public boolean isIncrementalRecompilationNeeded() {
+        return compilerMain.incrementalRecompilationNeeded;
+    }
+
 }
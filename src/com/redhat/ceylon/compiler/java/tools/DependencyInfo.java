@@ -0,0 +1,245 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The dependency information stored in a module archive by incremental
+ * compilation, in {@link #FILE_NAME}. For every source file of the module
+ * we remember a hash of its contents, a hash of the signature of each
+ * toplevel declaration it contains, and the toplevel declarations it uses.
+ *
+ * Each source file is stored as a set of properties keyed by its path
+ * relative to its source folder:
+ * <pre>
+ * hash:com/acme/foo.ceylon=&lt;sha1 of the source&gt;
+ * declares:com/acme/foo.ceylon=com.acme::foo=&lt;sha1 of its signature&gt; ...
+ * uses:com/acme/foo.ceylon=com.acme::bar ceylon.collection::HashMap ...
+ * stale:com/acme/foo.ceylon=true
+ * </pre>
+ * We also remember the API signature of each module the module imports
+ * (see {@link #getApiSignature()}), keyed by its name and version:
+ * <pre>
+ * import:com.acme.bar/1.0=&lt;sha1 of its toplevel declaration signatures&gt;
+ * </pre>
+ */
+public class DependencyInfo {
+
+    public static final String FILE_NAME = "META-INF/dependencies.txt";
+
+    private static final String HASH = "hash:";
+    private static final String DECLARES = "declares:";
+    private static final String USES = "uses:";
+    private static final String STALE = "stale:";
+    private static final String IMPORT = "import:";
+
+    /**
+     * What we know about a single source file.
+     */
+    static class SourceFile {
+        /** The hash of the source file contents */
+        String hash;
+        /**
+         * Set when the file must be compiled again: it had errors, or
+         * it uses a declaration whose signature changed since it was
+         * last compiled.
+         */
+        boolean stale;
+        /** The toplevel declarations by qualified name, with the hash of their signature */
+        final Map<String,String> declarations = new TreeMap<String,String>();
+        /** The qualified names of the toplevel declarations used by this file */
+        final Set<String> uses = new TreeSet<String>();
+    }
+
+    private final Map<String,SourceFile> sourceFiles = new TreeMap<String,SourceFile>();
+    /** The API signatures of the imported modules, by name and version */
+    private final Map<String,String> imports = new TreeMap<String,String>();
+
+    public Set<String> getPaths() {
+        return sourceFiles.keySet();
+    }
+
+    SourceFile get(String path) {
+        return sourceFiles.get(path);
+    }
+
+    void put(String path, SourceFile sourceFile) {
+        sourceFiles.put(path, sourceFile);
+    }
+
+    Map<String,String> getImports() {
+        return imports;
+    }
+
+    /**
+     * Returns a hash of the signatures of all the toplevel declarations
+     * of the module, which only changes when a file importing the module
+     * may have to be compiled again.
+     */
+    String getApiSignature() {
+        Map<String,String> declarations = new TreeMap<String,String>();
+        for(SourceFile sourceFile : sourceFiles.values()){
+            declarations.putAll(sourceFile.declarations);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for(Map.Entry<String,String> declaration : declarations.entrySet()){
+                digest.update((declaration.getKey() + "=" + declaration.getValue() + "\n").getBytes("UTF-8"));
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the dependency information from the given module archive.
+     * @return the dependency information, or null if the archive does not
+     * exist or was not produced by an incremental compilation.
+     */
+    public static DependencyInfo read(File car) throws IOException {
+        if(car == null || !car.exists())
+            return null;
+        JarFile jarFile = new JarFile(car);
+        try {
+            JarEntry entry = jarFile.getJarEntry(FILE_NAME);
+            if(entry == null)
+                return null;
+            Properties properties = new Properties();
+            InputStream inputStream = jarFile.getInputStream(entry);
+            try {
+                properties.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            return fromProperties(properties);
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static DependencyInfo fromProperties(Properties properties) {
+        DependencyInfo info = new DependencyInfo();
+        for(String key : properties.stringPropertyNames()){
+            if(key.startsWith(IMPORT)){
+                info.imports.put(key.substring(IMPORT.length()), properties.getProperty(key));
+                continue;
+            }
+            if(!key.startsWith(HASH))
+                continue;
+            String path = key.substring(HASH.length());
+            SourceFile sourceFile = new SourceFile();
+            sourceFile.hash = properties.getProperty(key);
+            sourceFile.stale = Boolean.parseBoolean(properties.getProperty(STALE + path));
+            for(String declaration : split(properties.getProperty(DECLARES + path))){
+                int eq = declaration.lastIndexOf('=');
+                if(eq != -1)
+                    sourceFile.declarations.put(declaration.substring(0, eq), declaration.substring(eq + 1));
+            }
+            for(String use : split(properties.getProperty(USES + path))){
+                sourceFile.uses.add(use);
+            }
+            info.put(path, sourceFile);
+        }
+        return info;
+    }
+
+    private static String[] split(String value) {
+        if(value == null || value.isEmpty())
+            return new String[0];
+        return value.split(" ");
+    }
+
+    public void write(OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        for(Map.Entry<String,SourceFile> entry : sourceFiles.entrySet()){
+            String path = entry.getKey();
+            SourceFile sourceFile = entry.getValue();
+            properties.setProperty(HASH + path, sourceFile.hash);
+            if(sourceFile.stale)
+                properties.setProperty(STALE + path, "true");
+            StringBuilder declarations = new StringBuilder();
+            for(Map.Entry<String,String> declaration : sourceFile.declarations.entrySet()){
+                if(declarations.length() > 0)
+                    declarations.append(' ');
+                declarations.append(declaration.getKey()).append('=').append(declaration.getValue());
+            }
+            properties.setProperty(DECLARES + path, declarations.toString());
+            StringBuilder uses = new StringBuilder();
+            for(String use : sourceFile.uses){
+                if(uses.length() > 0)
+                    uses.append(' ');
+                uses.append(use);
+            }
+            properties.setProperty(USES + path, uses.toString());
+        }
+        for(Map.Entry<String,String> entry : imports.entrySet()){
+            properties.setProperty(IMPORT + entry.getKey(), entry.getValue());
+        }
+        store(properties, out);
+    }
+
+    /**
+     * Writes the given properties sorted and without the date comment
+     * {@link Properties#store(OutputStream, String)} adds, so that the
+     * same information always produces the same bytes.
+     */
+    private static void store(Properties properties, OutputStream out) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        properties.store(buffer, null);
+        // store() escapes everything outside of ISO-8859-1, and line breaks within values
+        String[] lines = buffer.toString("ISO-8859-1").split("\r?\n");
+        Arrays.sort(lines);
+        for(String line : lines){
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            out.write((line + "\n").getBytes("ISO-8859-1"));
+        }
+        out.flush();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
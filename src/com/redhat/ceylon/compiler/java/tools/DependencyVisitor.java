@@ -0,0 +1,89 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.util.Set;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.model.cmr.JDKUtils;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Package;
+import com.redhat.ceylon.model.typechecker.model.Scope;
+
+/**
+ * Collects the qualified names of the toplevel declarations a compilation
+ * unit depends on, for incremental compilation. Members and local
+ * declarations are attributed to their toplevel container. Declarations
+ * from the language module and the JDK are left out since they can't
+ * change between two compilations.
+ */
+class DependencyVisitor extends Visitor {
+
+    private final Set<String> uses;
+
+    DependencyVisitor(Set<String> uses) {
+        this.uses = uses;
+    }
+
+    @Override
+    public void visit(Tree.MemberOrTypeExpression that) {
+        use(that.getDeclaration());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.SimpleType that) {
+        use(that.getDeclarationModel());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.MemberLiteral that) {
+        use(that.getDeclaration());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.ImportMemberOrType that) {
+        use(that.getDeclarationModel());
+        super.visit(that);
+    }
+
+    private void use(Declaration declaration) {
+        if(declaration == null)
+            return;
+        Scope scope = declaration;
+        while(scope != null
+                && !(scope.getContainer() instanceof Package)){
+            scope = scope.getContainer();
+        }
+        if(!(scope instanceof Declaration))
+            return;
+        Module module = ((Package)scope.getContainer()).getModule();
+        if(module == null
+                || module.getNameAsString().equals(Module.LANGUAGE_MODULE_NAME)
+                || JDKUtils.isJDKModule(module.getNameAsString()))
+            return;
+        uses.add(((Declaration)scope).getQualifiedNameString());
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.ceylon.cmr.util.JarUtils;
+
+/**
+ * Updates a jar file in place. The entries which come before the first
+ * entry that goes away or changes are left untouched, and everything after
+ * it is rewritten: the surviving entries in their original order, with the
+ * changed ones replaced by their new version, followed by the new entries
+ * and a new central directory. The jar never contains stale entries, so
+ * that tools which stream through the local headers (such as
+ * {@link java.util.jar.JarInputStream}) see the same entries as the ones
+ * which read the central directory, and since the order is kept the
+ * manifest stays where it was.
+ *
+ * The entries we write which are identical to the ones the jar already
+ * has are not considered changed, so recompiling a file usually only
+ * rewrites the end of the jar, where the bookkeeping entries are. We only
+ * handle the plain zip files we produce ourselves: no zip64, no archive
+ * comment.
+ */
+class InPlaceJarUpdater {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    // offsets of the fields we need in a central directory record
+    private static final int CENHOW = 10;
+    private static final int CENCRC = 16;
+    private static final int CENOFF = 42;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * An entry as found in the central directory.
+     */
+    private static class Entry {
+        String name;
+        /** The raw central directory record */
+        byte[] record;
+        /** The offset of the local header */
+        long offset;
+        /** The length of the local header, data and data descriptor */
+        long length;
+
+        /**
+         * Returns true if the given entry has the same data as this one, as
+         * far as we can tell without reading it.
+         */
+        boolean isSameAs(Entry other) {
+            // the compression method, then the CRC and both sizes
+            return sameBytes(record, other.record, CENHOW, 2)
+                    && sameBytes(record, other.record, CENCRC, 12);
+        }
+    }
+
+    private final File file;
+    private final long directoryOffset;
+    private final Map<String,Entry> entries;
+
+    private InPlaceJarUpdater(File file, long directoryOffset, Map<String,Entry> entries) {
+        this.file = file;
+        this.directoryOffset = directoryOffset;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns an updater for the given jar, or null if we can't update it
+     * in place.
+     */
+    static InPlaceJarUpdater open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return read(file, raf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static InPlaceJarUpdater read(File file, RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        if(length < ENDHDR)
+            return null;
+        byte[] end = new byte[ENDHDR];
+        raf.seek(length - ENDHDR);
+        raf.readFully(end);
+        if(getInt(end, 0) != ENDSIG
+                // multiple disks
+                || getShort(end, 4) != 0
+                || getShort(end, 6) != 0
+                // comment
+                || getShort(end, 20) != 0)
+            return null;
+        int count = getShort(end, 10);
+        long directorySize = getUnsignedInt(end, 12);
+        long directoryOffset = getUnsignedInt(end, 16);
+        // zip64, or something we didn't write
+        if(count == 0xFFFF
+                || directoryOffset == 0xFFFFFFFFL
+                || directoryOffset + directorySize != length - ENDHDR)
+            return null;
+        byte[] directory = new byte[(int)directorySize];
+        raf.seek(directoryOffset);
+        raf.readFully(directory);
+        List<Entry> list = new ArrayList<Entry>(count);
+        int pos = 0;
+        for(int i = 0; i < count; i++){
+            if(pos + CENHDR > directory.length
+                    || getInt(directory, pos) != CENSIG)
+                return null;
+            int nameLength = getShort(directory, pos + 28);
+            int recordLength = CENHDR + nameLength + getShort(directory, pos + 30) + getShort(directory, pos + 32);
+            if(pos + recordLength > directory.length)
+                return null;
+            Entry entry = new Entry();
+            entry.name = new String(directory, pos + CENHDR, nameLength, UTF8);
+            entry.offset = getUnsignedInt(directory, pos + CENOFF);
+            entry.record = new byte[recordLength];
+            System.arraycopy(directory, pos, entry.record, 0, recordLength);
+            list.add(entry);
+            pos += recordLength;
+        }
+        // the data of an entry goes up to the next entry, or to the central directory
+        sortByOffset(list);
+        for(int i = 0; i < list.size(); i++){
+            long next = i + 1 < list.size() ? list.get(i + 1).offset : directoryOffset;
+            list.get(i).length = next - list.get(i).offset;
+        }
+        Map<String,Entry> entries = new LinkedHashMap<String,Entry>();
+        for(Entry entry : list)
+            entries.put(entry.name, entry);
+        return new InPlaceJarUpdater(file, directoryOffset, entries);
+    }
+
+    private static void sortByOffset(List<Entry> list) {
+        Collections.sort(list, new Comparator<Entry>(){
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.offset < b.offset ? -1 : (a.offset == b.offset ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * Merges the entries of the given jar, plus the given folders if they
+     * are missing, into our jar, and drops the entries avoided by the
+     * filter. The new end of the jar is prepared in a temporary file before
+     * we touch the jar, and if writing it fails we put back the original
+     * end, so the jar is never left half updated.
+     * @return the number of bytes written, or -1 if the jar would be too
+     * large for us to update and must be rewritten
+     */
+    long update(File additions, JarUtils.JarEntryFilter filter, Set<String> folders) throws IOException {
+        InPlaceJarUpdater added = open(additions);
+        if(added == null)
+            throw new IOException("Invalid jar file: " + additions);
+        Map<String,Entry> changed = new LinkedHashMap<String,Entry>();
+        for(Entry entry : added.entries.values()){
+            Entry previous = entries.get(entry.name);
+            if(previous == null || !previous.isSameAs(entry))
+                changed.put(entry.name, entry);
+        }
+        // everything from the first entry which changes or goes away gets rewritten
+        long cut = directoryOffset;
+        for(Entry entry : entries.values()){
+            if(changed.containsKey(entry.name)
+                    || isRemoved(entry, added, filter))
+                cut = Math.min(cut, entry.offset);
+        }
+        List<Entry> kept = new ArrayList<Entry>(entries.values());
+        sortByOffset(kept);
+
+        File tail = File.createTempFile("ceylon-car-tail-", ".zip");
+        try {
+            ByteArrayOutputStream directory = new ByteArrayOutputStream();
+            int count = 0;
+            RandomAccessFile out = new RandomAccessFile(tail, "rw");
+            try {
+                RandomAccessFile original = new RandomAccessFile(file, "r");
+                RandomAccessFile source = new RandomAccessFile(additions, "r");
+                try {
+                    for(Entry entry : kept){
+                        if(isRemoved(entry, added, filter))
+                            continue;
+                        if(entry.offset < cut){
+                            directory.write(entry.record);
+                        }else{
+                            Entry replacement = changed.remove(entry.name);
+                            if(replacement != null)
+                                directory.write(copy(source, replacement, out, cut));
+                            else
+                                directory.write(copy(original, entry, out, cut));
+                        }
+                        count++;
+                    }
+                    for(Entry entry : changed.values()){
+                        directory.write(copy(source, entry, out, cut));
+                        count++;
+                    }
+                } finally {
+                    source.close();
+                    original.close();
+                }
+                for(String folder : folders){
+                    if(!entries.containsKey(folder) && !added.entries.containsKey(folder)){
+                        long offset = cut + out.getFilePointer();
+                        byte[] name = folder.getBytes(UTF8);
+                        out.write(folderHeader(name));
+                        directory.write(folderRecord(name, offset));
+                        count++;
+                    }
+                }
+                long directoryOffset = cut + out.getFilePointer();
+                byte[] bytes = directory.toByteArray();
+                if(count >= 0xFFFF
+                        || directoryOffset + bytes.length + ENDHDR >= 0xFFFFFFFFL)
+                    return -1;
+                out.write(bytes);
+                byte[] end = new byte[ENDHDR];
+                putInt(end, 0, ENDSIG);
+                putShort(end, 8, count);
+                putShort(end, 10, count);
+                putInt(end, 12, bytes.length);
+                putInt(end, 16, (int)directoryOffset);
+                out.write(end);
+            } finally {
+                out.close();
+            }
+            replaceTail(cut, tail);
+            return tail.length();
+        } finally {
+            tail.delete();
+        }
+    }
+
+    private boolean isRemoved(Entry entry, InPlaceJarUpdater added, JarUtils.JarEntryFilter filter) {
+        return filter.avoid(entry.name)
+                && !added.entries.containsKey(entry.name);
+    }
+
+    /**
+     * Copies the given entry to the end of the given file.
+     * @return the central directory record of the copy, knowing that the
+     * file will be written at the given offset of the jar
+     */
+    private static byte[] copy(RandomAccessFile from, Entry entry, RandomAccessFile to, long base) throws IOException {
+        long offset = base + to.getFilePointer();
+        from.seek(entry.offset);
+        copy(from, entry.length, to);
+        return withOffset(entry.record, offset);
+    }
+
+    private static void copy(RandomAccessFile from, long length, RandomAccessFile to) throws IOException {
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while(remaining > 0){
+            int read = from.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+            if(read == -1)
+                throw new IOException("Unexpected end of file");
+            to.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Replaces everything in our jar from the given offset on with the
+     * contents of the given file, putting back what was there on failure.
+     */
+    private void replaceTail(long offset, File tail) throws IOException {
+        File backup = File.createTempFile("ceylon-car-backup-", ".zip");
+        try {
+            RandomAccessFile target = new RandomAccessFile(file, "rw");
+            try {
+                long originalLength = target.length();
+                RandomAccessFile saved = new RandomAccessFile(backup, "rw");
+                try {
+                    target.seek(offset);
+                    copy(target, originalLength - offset, saved);
+                    boolean done = false;
+                    try {
+                        RandomAccessFile source = new RandomAccessFile(tail, "r");
+                        try {
+                            target.seek(offset);
+                            copy(source, source.length(), target);
+                        } finally {
+                            source.close();
+                        }
+                        target.setLength(target.getFilePointer());
+                        done = true;
+                    } finally {
+                        if(!done){
+                            saved.seek(0);
+                            target.seek(offset);
+                            copy(saved, saved.length(), target);
+                            target.setLength(originalLength);
+                        }
+                    }
+                } finally {
+                    saved.close();
+                }
+            } finally {
+                target.close();
+            }
+        } finally {
+            backup.delete();
+        }
+    }
+
+    private static byte[] withOffset(byte[] record, long offset) {
+        byte[] copy = record.clone();
+        putInt(copy, CENOFF, (int)offset);
+        return copy;
+    }
+
+    private static byte[] folderHeader(byte[] name) {
+        byte[] header = new byte[LOCHDR + name.length];
+        putInt(header, 0, LOCSIG);
+        putShort(header, 4, 10);
+        putInt(header, 10, dosTime());
+        putShort(header, 26, name.length);
+        System.arraycopy(name, 0, header, LOCHDR, name.length);
+        return header;
+    }
+
+    private static byte[] folderRecord(byte[] name, long offset) {
+        byte[] record = new byte[CENHDR + name.length];
+        putInt(record, 0, CENSIG);
+        putShort(record, 4, 20);
+        putShort(record, 6, 10);
+        putInt(record, 12, dosTime());
+        putShort(record, 28, name.length);
+        putInt(record, CENOFF, (int)offset);
+        System.arraycopy(name, 0, record, CENHDR, name.length);
+        return record;
+    }
+
+    private static int dosTime() {
+        Calendar calendar = Calendar.getInstance();
+        return ((calendar.get(Calendar.YEAR) - 1980) << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static boolean sameBytes(byte[] a, byte[] b, int pos, int length) {
+        for(int i = pos; i < pos + length; i++){
+            if(a[i] != b[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int getShort(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) | ((bytes[pos + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte[] bytes, int pos) {
+        return getShort(bytes, pos) | (getShort(bytes, pos + 2) << 16);
+    }
+
+    private static long getUnsignedInt(byte[] bytes, int pos) {
+        return getInt(bytes, pos) & 0xFFFFFFFFL;
+    }
+
+    private static void putShort(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte)value;
+        bytes[pos + 1] = (byte)(value >> 8);
+    }
+
+    private static void putInt(byte[] bytes, int pos, int value) {
+        putShort(bytes, pos, value);
+        putShort(bytes, pos + 2, value >> 16);
+    }
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.compiler.java.codegen.CeylonCompilationUnit;
+import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
+import com.redhat.ceylon.model.cmr.JDKUtils;
+import com.redhat.ceylon.model.typechecker.model.Annotation;
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Functional;
+import com.redhat.ceylon.model.typechecker.model.Generic;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.ModuleImport;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.ParameterList;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Value;
+import com.redhat.ceylon.model.typechecker.util.ModuleManager;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Implements the <tt>-incremental</tt> option.
+ *
+ * Before typechecking, {@link #prune(List, PhasedUnits)} drops the source
+ * files which did not change since the previous compilation of their
+ * module, so that their declarations get loaded from the previous module
+ * archive instead.
+ *
+ * After code generation, {@link #record(PhasedUnits)} computes the
+ * {@link DependencyInfo} of the files we compiled and compares the
+ * signatures of their toplevel declarations with the previous ones: the
+ * files which use a declaration whose signature changed (or which went
+ * away) are marked stale, and {@link #isRecompilationNeeded()} tells the
+ * caller that another compilation is needed to compile them, which the
+ * command line compiler runs right away. The signature of a type includes
+ * the members it inherits, so a change to a supertype reaches the types
+ * which inherit from it indirectly, one compilation at a time. This is
+ * cheaper than recompiling every dependent file up front, since most
+ * changes do not touch any signature.
+ *
+ * We fall back to compiling a module completely when we do not have any
+ * dependency information for it, when one of its module or package
+ * descriptors changed, when the signatures of the declarations of one of
+ * the modules it imports changed since it was last compiled (for example
+ * because that module was compiled again by itself), or when the
+ * compilation includes Java files, since we don't track dependencies for
+ * those.
+ */
+public class IncrementalCompilation {
+
+    private static final Context.Key<IncrementalCompilation> incrementalCompilationKey = new Context.Key<IncrementalCompilation>();
+
+    public static IncrementalCompilation instance(Context context) {
+        IncrementalCompilation instance = context.get(incrementalCompilationKey);
+        if (instance == null) {
+            instance = new IncrementalCompilation(context);
+            context.put(incrementalCompilationKey, instance);
+        }
+        return instance;
+    }
+
+    private final Log log;
+    private final CeyloncFileManager fileManager;
+    private final boolean enabled;
+    private final boolean verbose;
+    /** The dependency information of the previous compilation, for every module it exists for */
+    private final Map<Module,DependencyInfo> previousInfo = new HashMap<Module,DependencyInfo>();
+    /** The files we skipped because they did not change, by module */
+    private final Map<Module,Set<String>> prunedPaths = new HashMap<Module,Set<String>>();
+    private final Map<PhasedUnit,String> hashes = new HashMap<PhasedUnit,String>();
+    private boolean recompilationNeeded;
+    private boolean recorded;
+
+    private IncrementalCompilation(Context context) {
+        Options options = Options.instance(context);
+        log = CeylonLog.instance(context);
+        fileManager = (CeyloncFileManager) context.get(JavaFileManager.class);
+        enabled = options.isSet(OptionName.CEYLONINCREMENTAL);
+        verbose = options.get(OptionName.VERBOSE) != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the last compilation marked some of the files it
+     * did not compile as stale, meaning that they must be compiled again
+     * for the module archive to be up to date.
+     */
+    public boolean isRecompilationNeeded() {
+        return recompilationNeeded;
+    }
+
+    /**
+     * Removes the trees (and their phased units) of the source files which
+     * don't need to be compiled again. Module and package descriptors are
+     * always kept.
+     */
+    public List<JCCompilationUnit> prune(List<JCCompilationUnit> trees, PhasedUnits phasedUnits) {
+        if(!enabled)
+            return trees;
+        Map<Module,java.util.List<CeylonCompilationUnit>> unitsByModule = new LinkedHashMap<Module,java.util.List<CeylonCompilationUnit>>();
+        for(JCCompilationUnit tree : trees){
+            // we don't know what Java files (or Ceylon files with syntax errors) depend on
+            if(!(tree instanceof CeylonCompilationUnit))
+                return trees;
+            CeylonCompilationUnit unit = (CeylonCompilationUnit) tree;
+            Module module = unit.phasedUnit.getPackage().getModule();
+            java.util.List<CeylonCompilationUnit> units = unitsByModule.get(module);
+            if(units == null){
+                units = new ArrayList<CeylonCompilationUnit>();
+                unitsByModule.put(module, units);
+            }
+            units.add(unit);
+        }
+        Set<JCCompilationUnit> pruned = new HashSet<JCCompilationUnit>();
+        for(Map.Entry<Module,java.util.List<CeylonCompilationUnit>> entry : unitsByModule.entrySet()){
+            Module module = entry.getKey();
+            DependencyInfo previous = readPreviousInfo(module);
+            if(previous == null){
+                log(module, "no dependency information, compiling all files");
+                continue;
+            }
+            previousInfo.put(module, previous);
+            Set<String> modulePaths = new HashSet<String>();
+            java.util.List<CeylonCompilationUnit> unchanged = new ArrayList<CeylonCompilationUnit>();
+            boolean descriptorChanged = false;
+            for(CeylonCompilationUnit unit : entry.getValue()){
+                PhasedUnit phasedUnit = unit.phasedUnit;
+                String path = phasedUnit.getPathRelativeToSrcDir();
+                modulePaths.add(path);
+                DependencyInfo.SourceFile sourceFile = previous.get(path);
+                if(sourceFile != null
+                        && !sourceFile.stale
+                        && sourceFile.hash.equals(getHash(phasedUnit))){
+                    if(!isDescriptor(path))
+                        unchanged.add(unit);
+                }else if(isDescriptor(path)){
+                    descriptorChanged = true;
+                }
+            }
+            for(String path : previous.getPaths()){
+                if(isDescriptor(path) && !modulePaths.contains(path) && !existsInSourcePath(path))
+                    descriptorChanged = true;
+            }
+            if(descriptorChanged){
+                log(module, "module or package descriptor changed, compiling all files");
+                continue;
+            }
+            String changedImport = getChangedImport(previous);
+            if(changedImport != null){
+                log(module, "imported module " + changedImport + " changed, compiling all files");
+                continue;
+            }
+            Set<String> paths = new HashSet<String>();
+            for(CeylonCompilationUnit unit : unchanged){
+                String path = unit.phasedUnit.getPathRelativeToSrcDir();
+                phasedUnits.removePhasedUnitForRelativePath(path);
+                paths.add(path);
+                pruned.add(unit);
+            }
+            prunedPaths.put(module, paths);
+            log(module, "compiling " + (entry.getValue().size() - unchanged.size()) + " out of " + entry.getValue().size() + " files");
+        }
+        if(pruned.isEmpty())
+            return trees;
+        List<JCCompilationUnit> result = List.nil();
+        for(JCCompilationUnit tree : trees){
+            if(!pruned.contains(tree))
+                result = result.prepend(tree);
+        }
+        return result.reverse();
+    }
+
+    /**
+     * Computes the dependency information of the files we compiled, merges
+     * it with the previous information, marks the files affected by
+     * signature changes as stale and hands the result to the file manager
+     * to be written in the module archives.
+     */
+    public void record(PhasedUnits phasedUnits) {
+        if(!enabled || recorded)
+            return;
+        recorded = true;
+        Map<Module,DependencyInfo> compiledInfo = new LinkedHashMap<Module,DependencyInfo>();
+        Map<String,String> oldSignatures = new HashMap<String,String>();
+        Map<String,String> newSignatures = new HashMap<String,String>();
+        for(PhasedUnit phasedUnit : phasedUnits.getPhasedUnits()){
+            Module module = phasedUnit.getPackage().getModule();
+            String path = phasedUnit.getPathRelativeToSrcDir();
+            DependencyInfo.SourceFile sourceFile = new DependencyInfo.SourceFile();
+            sourceFile.hash = getHash(phasedUnit);
+            if(phasedUnit instanceof CeylonPhasedUnit){
+                JavaFileObject fileObject = ((CeylonPhasedUnit) phasedUnit).getFileObject();
+                // make sure we try again next time
+                sourceFile.stale = fileObject instanceof CeylonFileObject
+                        && ((CeylonFileObject) fileObject).hasError();
+            }
+            sourceFile.declarations.putAll(getSignatures(phasedUnit.getUnit().getDeclarations()));
+            phasedUnit.getCompilationUnit().visit(new DependencyVisitor(sourceFile.uses));
+
+            DependencyInfo info = compiledInfo.get(module);
+            if(info == null){
+                info = new DependencyInfo();
+                compiledInfo.put(module, info);
+            }
+            info.put(path, sourceFile);
+            newSignatures.putAll(sourceFile.declarations);
+            DependencyInfo previous = previousInfo.get(module);
+            if(previous != null && previous.get(path) != null)
+                oldSignatures.putAll(previous.get(path).declarations);
+        }
+        // declarations of deleted files count as changed
+        for(Map.Entry<Module,DependencyInfo> entry : previousInfo.entrySet()){
+            DependencyInfo info = compiledInfo.get(entry.getKey());
+            for(String path : entry.getValue().getPaths()){
+                if((info == null || info.get(path) == null)
+                        && !existsInSourcePath(path))
+                    oldSignatures.putAll(entry.getValue().get(path).declarations);
+            }
+        }
+        Set<String> changed = new HashSet<String>();
+        for(Map.Entry<String,String> entry : oldSignatures.entrySet()){
+            if(!entry.getValue().equals(newSignatures.get(entry.getKey())))
+                changed.add(entry.getKey());
+        }
+        for(Map.Entry<String,String> entry : newSignatures.entrySet()){
+            if(!oldSignatures.containsKey(entry.getKey()))
+                changed.add(entry.getKey());
+        }
+        for(Map.Entry<Module,DependencyInfo> entry : compiledInfo.entrySet()){
+            Module module = entry.getKey();
+            DependencyInfo info = entry.getValue();
+            DependencyInfo previous = previousInfo.get(module);
+            if(previous != null){
+                Set<String> pruned = prunedPaths.get(module);
+                for(String path : previous.getPaths()){
+                    if(info.get(path) != null || !existsInSourcePath(path))
+                        continue;
+                    DependencyInfo.SourceFile sourceFile = previous.get(path);
+                    if(!sourceFile.stale && !Collections.disjoint(sourceFile.uses, changed)){
+                        sourceFile.stale = true;
+                        log(module, "marking " + path + " as stale");
+                    }
+                    if(sourceFile.stale && pruned != null && pruned.contains(path))
+                        recompilationNeeded = true;
+                    info.put(path, sourceFile);
+                }
+            }
+        }
+        // now that we know the signatures of every module we compiled
+        for(Map.Entry<Module,DependencyInfo> entry : compiledInfo.entrySet()){
+            Module module = entry.getKey();
+            DependencyInfo info = entry.getValue();
+            for(ModuleImport moduleImport : module.getImports()){
+                Module imported = moduleImport.getModule();
+                if(isUnchangeable(imported))
+                    continue;
+                DependencyInfo importedInfo = compiledInfo.get(imported);
+                String signature = importedInfo != null
+                        ? importedInfo.getApiSignature()
+                        : getApiSignature(imported.getNameAsString(), imported.getVersion());
+                info.getImports().put(imported.getNameAsString() + "/" + imported.getVersion(), signature);
+            }
+            fileManager.setDependencyInfo(module, info);
+        }
+    }
+
+    /**
+     * Returns the name and version of the first module imported by the
+     * module of the given dependency information whose API signature is 
+     * not the one it had when the module was compiled, or null if there 
+     * is none.
+     */
+    private String getChangedImport(DependencyInfo previous) {
+        for(Map.Entry<String,String> entry : previous.getImports().entrySet()){
+            String nameAndVersion = entry.getKey();
+            int slash = nameAndVersion.lastIndexOf('/');
+            String signature = getApiSignature(nameAndVersion.substring(0, slash), nameAndVersion.substring(slash + 1));
+            if(!entry.getValue().equals(signature))
+                return nameAndVersion;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the API signature of the given module as found in the 
+     * repositories: the one recorded in its archive if it was compiled 
+     * incrementally, or the checksum of its archive otherwise.
+     */
+    private String getApiSignature(String name, String version) {
+        try {
+            RepositoryManager repositoryManager = fileManager.getRepositoryManager();
+            File artifact = repositoryManager.getArtifact(new ArtifactContext(name, version, ArtifactContext.CAR, ArtifactContext.JAR));
+            if(artifact == null)
+                return "";
+            DependencyInfo info = DependencyInfo.read(artifact);
+            if(info != null)
+                return info.getApiSignature();
+            return "sha1:" + getHash(artifact);
+        } catch (Exception e) {
+            // make sure it does not match
+            return "";
+        }
+    }
+
+    private DependencyInfo readPreviousInfo(Module module) {
+        try {
+            RepositoryManager repositoryManager = fileManager.getOutputRepositoryManager();
+            File car = repositoryManager.getArtifact(new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.CAR));
+            return DependencyInfo.read(car);
+        } catch (Exception e) {
+            // we'll just compile everything
+            return null;
+        }
+    }
+
+    private boolean isDescriptor(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return name.equals(ModuleManager.MODULE_FILE)
+                || name.equals(ModuleManager.PACKAGE_FILE);
+    }
+
+    private boolean existsInSourcePath(String path) {
+        Iterable<? extends File> sourcePath = ((JavacFileManager) fileManager).getLocation(StandardLocation.SOURCE_PATH);
+        if(sourcePath != null){
+            for(File dir : sourcePath){
+                if(new File(dir, path).exists())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private String getHash(PhasedUnit phasedUnit) {
+        String hash = hashes.get(phasedUnit);
+        if(hash == null){
+            try {
+                hash = getHash(phasedUnit.getUnitFile().getInputStream());
+            } catch (IOException e) {
+                // make sure it does not match
+                hash = "";
+            }
+            hashes.put(phasedUnit, hash);
+        }
+        return hash;
+    }
+
+    private static String getHash(File file) throws IOException {
+        return getHash(new FileInputStream(file));
+    }
+
+    private static String getHash(InputStream inputStream) throws IOException {
+        MessageDigest digest = getDigest();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        } finally {
+            inputStream.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private Map<String,String> getSignatures(java.util.List<Declaration> declarations) {
+        // getters and setters, or objects and their anonymous classes, share a name
+        Map<String,java.util.List<String>> descriptions = new TreeMap<String,java.util.List<String>>();
+        for(Declaration declaration : declarations){
+            if(!declaration.isToplevel())
+                continue;
+            String name = declaration.getQualifiedNameString();
+            java.util.List<String> list = descriptions.get(name);
+            if(list == null){
+                list = new ArrayList<String>(1);
+                descriptions.put(name, list);
+            }
+            StringBuilder sb = new StringBuilder();
+            describe(sb, declaration);
+            if(declaration instanceof TypeDeclaration)
+                describeInheritedMembers(sb, (TypeDeclaration) declaration);
+            list.add(sb.toString());
+        }
+        Map<String,String> signatures = new TreeMap<String,String>();
+        for(Map.Entry<String,java.util.List<String>> entry : descriptions.entrySet()){
+            java.util.List<String> list = entry.getValue();
+            Collections.sort(list);
+            MessageDigest digest = getDigest();
+            for(String description : list){
+                try {
+                    digest.update(description.getBytes("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            signatures.put(entry.getKey(), toHex(digest.digest()));
+        }
+        return signatures;
+    }
+
+    /**
+     * Describes what other files can see of the given declaration: we
+     * leave out anything that can't change the way they're typechecked
+     * or compiled, such as non-shared members or annotation arguments.
+     */
+    private void describe(StringBuilder sb, Declaration declaration) {
+        sb.append(declaration.getClass().getSimpleName()).append(' ').append(declaration.getName());
+        if(declaration.isShared())
+            sb.append(" shared");
+        if(declaration.isFormal())
+            sb.append(" formal");
+        if(declaration.isDefault())
+            sb.append(" default");
+        if(declaration.isActual())
+            sb.append(" actual");
+        if(declaration.isAnnotation())
+            sb.append(" annotation");
+        if(declaration.isNative())
+            sb.append(" native");
+        if(declaration instanceof Value && ((Value) declaration).isVariable())
+            sb.append(" variable");
+        if(declaration instanceof Class){
+            if(((Class) declaration).isAbstract())
+                sb.append(" abstract");
+            if(((Class) declaration).isFinal())
+                sb.append(" final");
+        }
+        for(Annotation annotation : declaration.getAnnotations()){
+            sb.append(" @").append(annotation.getName());
+        }
+        if(declaration instanceof Generic){
+            for(TypeParameter typeParameter : ((Generic) declaration).getTypeParameters()){
+                sb.append(" <");
+                if(typeParameter.isCovariant())
+                    sb.append("out ");
+                if(typeParameter.isContravariant())
+                    sb.append("in ");
+                sb.append(typeParameter.getName());
+                describe(sb, " satisfies", typeParameter.getSatisfiedTypes());
+                sb.append('>');
+            }
+        }
+        if(declaration instanceof TypedDeclaration){
+            sb.append(" : ");
+            describe(sb, ((TypedDeclaration) declaration).getType());
+        }
+        if(declaration instanceof Functional){
+            java.util.List<ParameterList> parameterLists = ((Functional) declaration).getParameterLists();
+            if(parameterLists != null){
+                for(ParameterList parameterList : parameterLists){
+                    sb.append(" (");
+                    for(Parameter parameter : parameterList.getParameters()){
+                        sb.append(parameter.getName()).append(' ');
+                        describe(sb, parameter.getType());
+                        if(parameter.isDefaulted())
+                            sb.append('=');
+                        if(parameter.isSequenced())
+                            sb.append(parameter.isAtLeastOne() ? '+' : '*');
+                        sb.append(',');
+                    }
+                    sb.append(')');
+                }
+            }
+        }
+        if(declaration instanceof TypeDeclaration){
+            TypeDeclaration typeDeclaration = (TypeDeclaration) declaration;
+            if(typeDeclaration.getExtendedType() != null){
+                sb.append(" extends ");
+                describe(sb, typeDeclaration.getExtendedType());
+            }
+            describe(sb, " satisfies", typeDeclaration.getSatisfiedTypes());
+            describe(sb, " of", typeDeclaration.getCaseTypes());
+            sb.append(" {");
+            for(Declaration member : typeDeclaration.getMembers()){
+                // type parameters are already described above
+                if(member.isShared() && !(member instanceof TypeParameter)){
+                    describe(sb, member);
+                    sb.append(';');
+                }
+            }
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Describes the members a type inherits from its supertypes, so that
+     * its signature changes when one of its supertypes changes, even if
+     * it does not name that supertype itself: given <tt>C satisfies J</tt>
+     * and <tt>J satisfies I</tt>, the files which use <tt>C</tt> must be
+     * compiled again when a member of <tt>I</tt> changes. Since the file
+     * declaring <tt>J</tt> uses <tt>I</tt>, it gets compiled again first,
+     * the signature of <tt>J</tt> changes, and so on along the hierarchy.
+     */
+    private void describeInheritedMembers(StringBuilder sb, TypeDeclaration declaration) {
+        for(Type supertype : declaration.getType().getSupertypes()){
+            TypeDeclaration supertypeDeclaration = supertype.getDeclaration();
+            if(supertypeDeclaration.equals(declaration)
+                    || isUnchangeable(supertypeDeclaration))
+                continue;
+            sb.append(" inherits ");
+            describe(sb, supertype);
+            sb.append(" {");
+            for(Declaration member : supertypeDeclaration.getMembers()){
+                if(member.isShared() && !(member instanceof TypeParameter)){
+                    describe(sb, member);
+                    sb.append(';');
+                }
+            }
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Declarations from the language module and the JDK can't change
+     * between two compilations.
+     */
+    private boolean isUnchangeable(Declaration declaration) {
+        return isUnchangeable(declaration.getUnit().getPackage().getModule());
+    }
+
+    private boolean isUnchangeable(Module module) {
+        return module == null
+                || module.getNameAsString().equals(Module.LANGUAGE_MODULE_NAME)
+                || JDKUtils.isJDKModule(module.getNameAsString());
+    }
+
+    private void describe(StringBuilder sb, String keyword, java.util.List<Type> types) {
+        if(types == null || types.isEmpty())
+            return;
+        sb.append(keyword);
+        for(Type type : types){
+            sb.append(' ');
+            describe(sb, type);
+        }
+    }
+
+    private void describe(StringBuilder sb, Type type) {
+        sb.append(type == null ? "?" : type.asQualifiedString());
+    }
+
+    private void log(Module module, String message) {
+        if(verbose)
+            Log.printLines(log.noticeWriter, "[Incremental compilation of " + module.getNameAsString() + ": " + message + "]");
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -42,6 +43,9 @@ import com.redhat.ceylon.cmr.api.ArtifactContext;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.cmr.api.ArtifactCreator;
 import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
+import com.redhat.ceylon.cmr.impl.CachingRepositoryManager;
+import com.redhat.ceylon.cmr.impl.IOUtils;
+import com.redhat.ceylon.cmr.impl.ShaSigner;
 import com.redhat.ceylon.cmr.util.JarUtils;
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.FileUtil;
@@ -56,6 +60,7 @@ import com.sun.tools.javac.util.Options;
 public class JarOutputRepositoryManager {
     
     private Map<Module,ProgressiveJar> openJars = new HashMap<Module, ProgressiveJar>();
+    private Map<Module,DependencyInfo> dependencyInfos = new HashMap<Module, DependencyInfo>();
     private Log log;
     private Options options;
     private CeyloncFileManager ceyloncFileManager;
@@ -82,11 +87,16 @@ public class JarOutputRepositoryManager {
         return jarFile;
     }
 
+    public void setDependencyInfo(Module module, DependencyInfo dependencyInfo) {
+        dependencyInfos.put(module, dependencyInfo);
+    }
+
     public void flush() throws IOException {
         Exception ex = null;
         try{
             for(ProgressiveJar jarFile : openJars.values()){
                 try {
+                    jarFile.setDependencyInfo(dependencyInfos.get(jarFile.module));
                     jarFile.close();
                 } catch (Exception e) {
                     ex = e;
@@ -95,6 +105,7 @@ public class JarOutputRepositoryManager {
         }finally{
             // make sure we clear on return and throw, so we don't try to flush again on throw
             openJars.clear();
+            dependencyInfos.clear();
         }
         if (ex instanceof IOException) {
             throw (IOException)ex;
@@ -124,6 +135,7 @@ public class JarOutputRepositoryManager {
         private final String resourceRootPath;
         private boolean writeMavenManifest;
         private TaskListener taskListener;
+        private DependencyInfo dependencyInfo;
 
         public ProgressiveJar(RepositoryManager repoManager, Module module, Log log, Options options, CeyloncFileManager ceyloncFileManager, TaskListener taskListener) throws IOException{
             this.options = options;
@@ -200,6 +212,10 @@ public class JarOutputRepositoryManager {
             return null;
         }
 
+        void setDependencyInfo(DependencyInfo dependencyInfo) {
+            this.dependencyInfo = dependencyInfo;
+        }
+
         public void close() throws IOException {
             try {
                 Set<String> copiedSourceFiles = srcCreator.copy(modifiedSourceFiles);
@@ -215,18 +231,28 @@ public class JarOutputRepositoryManager {
     
                 Properties previousMapping = getPreviousMapping();
                 writeMappingJarEntry(previousMapping, getJarFilter(previousMapping, copiedSourceFiles));
+                if (dependencyInfo != null) {
+                    writeDependencyInfoJarEntry();
+                }
                 
-                JarUtils.finishUpdatingJar(
-                        originalJarFile, outputJarFile, carContext, jarOutputStream,
-                        getJarFilter(previousMapping, copiedSourceFiles),
-                        repoManager, options.get(OptionName.VERBOSE) != null, cmrLog, folders, options.isSet(OptionName.CEYLONPACK200));
+                JarUtils.JarEntryFilter filter = getJarFilter(previousMapping, copiedSourceFiles);
+                boolean updatedInPlace = updateInPlace(filter);
+                if (!updatedInPlace) {
+                    JarUtils.finishUpdatingJar(
+                            originalJarFile, outputJarFile, carContext, jarOutputStream,
+                            filter,
+                            repoManager, options.get(OptionName.VERBOSE) != null, cmrLog, folders, options.isSet(OptionName.CEYLONPACK200));
+                }
                 
                 String info;
                 if(module.isDefault())
                     info = module.getNameAsString();
                 else
                     info = module.getNameAsString() + "/" + module.getVersion();
-                cmrLog.info("Created module " + info);
+                if(updatedInPlace)
+                    cmrLog.info("Updated module " + info + " in place");
+                else
+                    cmrLog.info("Created module " + info);
                 if(taskListener instanceof CeylonTaskListener){
                     ((CeylonTaskListener) taskListener).moduleCompiled(module.getNameAsString(), module.getVersion());
                 }
@@ -235,6 +261,74 @@ public class JarOutputRepositoryManager {
             }
         }
 
+        /**
+         * Merges the entries we wrote into the original car instead of rewriting it, if we were asked to
+         * and the car is a local file we know how to update.
+         * @return false if we did not touch the original car and it must be rewritten
+         */
+        private boolean updateInPlace(JarUtils.JarEntryFilter filter) throws IOException {
+            if (!options.isSet(OptionName.CEYLONAPPENDCAR)
+                    || originalJarFile == null
+                    || !originalJarFile.canWrite()
+                    // we'd be updating a copy of a remote car
+                    || repoManager instanceof CachingRepositoryManager
+                    || options.isSet(OptionName.CEYLONPACK200)) {
+                return false;
+            }
+            InPlaceJarUpdater updater = InPlaceJarUpdater.open(originalJarFile);
+            if (updater == null) {
+                return false;
+            }
+            jarOutputStream.close();
+            long written = updater.update(outputJarFile, filter, folders);
+            if (written < 0) {
+                reopenOutputJar();
+                return false;
+            }
+            cmrLog.debug("Rewrote the last " + written + " bytes of " + originalJarFile.getPath());
+            
+            boolean verbose = options.get(OptionName.VERBOSE) != null;
+            File sha1File = ShaSigner.sign(originalJarFile, cmrLog, verbose);
+            try {
+                ArtifactContext sha1Context = carContext.getSha1Context();
+                sha1Context.setForceOperation(true);
+                repoManager.putArtifact(sha1Context, sha1File);
+            } finally {
+                FileUtil.deleteQuietly(sha1File);
+            }
+            return true;
+        }
+
+        /**
+         * Copies the entries of the output jar we closed to a new one, to which the original entries can
+         * be added.
+         */
+        private void reopenOutputJar() throws IOException {
+            File closedJarFile = outputJarFile;
+            try {
+                outputJarFile = File.createTempFile("ceylon-compiler-", ".car");
+                jarOutputStream = new JarOutputStream(new FileOutputStream(outputJarFile));
+                JarFile jarFile = new JarFile(closedJarFile);
+                try {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry entry = entries.nextElement();
+                        jarOutputStream.putNextEntry(new ZipEntry(entry.getName()));
+                        InputStream inputStream = jarFile.getInputStream(entry);
+                        try {
+                            IOUtils.copyStream(inputStream, jarOutputStream, true, false);
+                        } finally {
+                            jarOutputStream.closeEntry();
+                        }
+                    }
+                } finally {
+                    jarFile.close();
+                }
+            } finally {
+                FileUtil.deleteQuietly(closedJarFile);
+            }
+        }
+
         private JarUtils.JarEntryFilter getJarFilter(final Properties previousMapping, final Set<String> copiedSourceFiles) {
             return new JarUtils.JarEntryFilter() {
                 @Override
@@ -249,6 +343,8 @@ public class JarOutputRepositoryManager {
                     } else {
                         return modifiedResourceFilesRel.contains(entryFullName)
                                 || entryFullName.equals(MAPPING_FILE)
+                                // only valid for the compilation that wrote it
+                                || entryFullName.equals(DependencyInfo.FILE_NAME)
                                 || (writeOsgiManifest && OsgiManifest.isManifestFileName(entryFullName))
                                 || (writeMavenManifest && MavenPomUtil.isMavenDescriptor(entryFullName, module));
                     }
@@ -307,6 +403,13 @@ public class JarOutputRepositoryManager {
             }
         }
 
+        private void writeDependencyInfoJarEntry() throws IOException {
+            folders.add(META_INF+"/");
+            jarOutputStream.putNextEntry(new ZipEntry(DependencyInfo.FILE_NAME));
+            dependencyInfo.write(jarOutputStream);
+            jarOutputStream.closeEntry();
+        }
+
         public JavaFileObject getJavaFileObject(String fileName, File sourceFile) {
             String entryName = fileName.replace(File.separatorChar, '/');
             
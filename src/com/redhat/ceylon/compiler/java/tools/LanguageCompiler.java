@@ -39,6 +39,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -47,6 +48,11 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.processing.Processor;
 import javax.tools.FileObject;
@@ -55,8 +61,8 @@ import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardLocation;
 
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
 
 import com.redhat.ceylon.cmr.util.JarUtils;
 import com.redhat.ceylon.common.Backend;
@@ -67,6 +73,7 @@ import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
 import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
 import com.redhat.ceylon.compiler.java.loader.CeylonEnter;
 import com.redhat.ceylon.compiler.java.loader.CeylonModelLoader;
+import com.redhat.ceylon.compiler.java.util.Profiler;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
@@ -84,7 +91,6 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.ImportModule;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.ModuleDescriptor;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
-import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
 import com.redhat.ceylon.model.loader.AbstractModelLoader;
 import com.redhat.ceylon.model.loader.JvmBackendUtil;
 import com.redhat.ceylon.model.typechecker.model.Module;
@@ -135,9 +141,12 @@ public class LanguageCompiler extends JavaCompiler {
 
     private CeylonEnter ceylonEnter;
 
+    private IncrementalCompilation incrementalCompilation;
+
     private Options options;
     
     private Timer timer;
+    private Profiler profiler;
     private boolean isBootstrap;
     private boolean addedDefaultModuleToClassPath;
     private boolean treatLikelyBugsAsErrors = false;
@@ -145,6 +154,12 @@ public class LanguageCompiler extends JavaCompiler {
     private List<JavaFileObject> resourceFileObjects;
     private Map<String,CeylonFileObject> moduleNamesToFileObjects = new HashMap<String,CeylonFileObject>();
     private SourceLanguage sourceLanguage;
+    private EnumSet<Warning> suppressedWarnings;
+    private boolean verboseParse;
+    private long sourceBytesCopied;
+    private Map<JavaFileObject,CeylonSource> preParsedSources = new HashMap<JavaFileObject,CeylonSource>();
+    /** Files we failed to read ahead of parsing them in parallel, which have already been reported */
+    private Set<JavaFileObject> unreadableSources = new HashSet<JavaFileObject>();
 
     /** Get the PhasedUnits instance for this context. */
     public static PhasedUnits getPhasedUnitsInstance(final Context context) {
@@ -217,9 +232,13 @@ public class LanguageCompiler extends JavaCompiler {
         }
         modelLoader = CeylonModelLoader.instance(context);
         ceylonEnter = CeylonEnter.instance(context);
+        incrementalCompilation = IncrementalCompilation.instance(context);
         options = Options.instance(context);
         isBootstrap = options.get(OptionName.BOOTSTRAPCEYLON) != null;
         timer = Timer.instance(context);
+        profiler = Profiler.instance(context);
+        verboseParse = options.get(OptionName.VERBOSE) != null
+                || options.get(OptionName.VERBOSE + ":benchmark") != null;
         sourceLanguage = SourceLanguage.instance(context);
     }
 
@@ -302,6 +321,8 @@ public class LanguageCompiler extends JavaCompiler {
             resourceFileObjects = null;
         }
         super.close(disposeNames);
+        // now that the output has been written
+        profiler.end();
     }
 
     private void addResources() throws Abort {
@@ -344,7 +365,13 @@ public class LanguageCompiler extends JavaCompiler {
 
                 t = parse(filename, readSource(filename));
             } else {
-                t = ceylonParse(filename, readSource(filename));
+                CeylonSource source = preParsedSources.remove(filename);
+                if (source != null)
+                    t = ceylonParse(filename, source);
+                else if (unreadableSources.remove(filename))
+                    t = makeErroneousCompilationUnit(filename);
+                else
+                    t = ceylonParse(filename, readSource(filename));
             }
             if (t.endPositions != null)
                 log.setEndPosTable(filename, t.endPositions);
@@ -384,7 +411,53 @@ public class LanguageCompiler extends JavaCompiler {
         
     }
     
+    /**
+     * A Ceylon source file, and the result of lexing and parsing it. The
+     * line map and the lexer share the decoded characters. Parsing only
+     * depends on the file contents, so it can happen on any thread.
+     */
+    private static class CeylonSource {
+        final char[] chars;
+        final int length;
+        final int bytesCopied;
+        final LineMap map;
+        CompilationUnit compilationUnit;
+        java.util.List<LexError> lexerErrors;
+        java.util.List<ParseError> parserErrors;
+
+        CeylonSource(CharSequence source) {
+            length = source.length();
+            char[] array = getSourceArray(source);
+            if (array != null) {
+                chars = array;
+                bytesCopied = 0;
+            } else {
+                chars = copySourceChars(source);
+                bytesCopied = length * 2;
+            }
+            map = Position.makeLineMap(chars, length, false);
+        }
+
+        void parse() throws RecognitionException {
+            if (compilationUnit != null)
+                return;
+            CeylonLexer lexer = new CeylonLexer(new SourceCharStream(chars, length));
+            CeylonParser parser = new CeylonParser(new CommonTokenStream(lexer));
+            CompilationUnit cu = parser.compilationUnit();
+            lexerErrors = lexer.getErrors();
+            parserErrors = parser.getErrors();
+            compilationUnit = cu;
+        }
+    }
+
     private JCCompilationUnit ceylonParse(JavaFileObject filename, CharSequence readSource) {
+        // readSource() already logged why we could not read it
+        if (readSource == null)
+            return makeErroneousCompilationUnit(filename);
+        return ceylonParse(filename, new CeylonSource(readSource));
+    }
+
+    private JCCompilationUnit ceylonParse(JavaFileObject filename, CeylonSource source) {
         if(ceylonEnter.hasRun())
             throw new RunTwiceException("Trying to load new source file after CeylonEnter has been called: "+filename);
         try {
@@ -395,32 +468,18 @@ public class LanguageCompiler extends JavaCompiler {
             VirtualFile file = vfs.getFromFile(sourceFile);
             VirtualFile srcDir = vfs.getFromFile(getSrcDir(sourceFile));
             
-            String source = readSource.toString();
-            char[] chars = source.toCharArray();
-            LineMap map = Position.makeLineMap(chars, chars.length, false);
+            sourceBytesCopied += source.bytesCopied;
+            if (verboseParse)
+                Log.printLines(log.noticeWriter, "[parsed " + filename.getName() + ": " + source.bytesCopied + " bytes copied]");
+            LineMap map = source.map;
             
             PhasedUnit phasedUnit = null;
             
             PhasedUnit externalPhasedUnit = compilerDelegate.getExternalSourcePhasedUnit(srcDir, file);
             
-            String suppressWarnings = options.get(OptionName.CEYLONSUPPRESSWARNINGS);
-            final EnumSet<Warning> suppressedWarnings;
-            if (suppressWarnings != null) {
-                if (suppressWarnings.trim().isEmpty()) {
-                    suppressedWarnings = EnumSet.allOf(Warning.class);
-                } else {
-                    suppressedWarnings = EnumSet.noneOf(Warning.class);
-                    for (String name : suppressWarnings.trim().split(" *, *")) {
-                        suppressedWarnings.add(Warning.valueOf(name));
-                    }
-                }
-            } else {
-                suppressedWarnings = EnumSet.noneOf(Warning.class);
-            }
-            
             if (externalPhasedUnit != null) {
                 phasedUnit = new CeylonPhasedUnit(externalPhasedUnit, filename, map);
-                phasedUnit.setSuppressedWarnings(suppressedWarnings);
+                phasedUnit.setSuppressedWarnings(getSuppressedWarnings());
                 phasedUnits.addPhasedUnit(externalPhasedUnit.getUnitFile(), phasedUnit);
                 gen.setMap(map);
                 
@@ -431,20 +490,16 @@ public class LanguageCompiler extends JavaCompiler {
                 return gen.makeJCCompilationUnitPlaceholder(phasedUnit.getCompilationUnit(), filename, pkgName, phasedUnit);
             }
             if (phasedUnit == null) {
-                ANTLRStringStream input = new NewlineFixingStringStream(source);
-                CeylonLexer lexer = new CeylonLexer(input);
-
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
+                // already done if we parsed in parallel
+                source.parse();
+                CompilationUnit cu = source.compilationUnit;
 
-                CeylonParser parser = new CeylonParser(tokens);
-                CompilationUnit cu = parser.compilationUnit();
-
-                java.util.List<LexError> lexerErrors = lexer.getErrors();
+                java.util.List<LexError> lexerErrors = source.lexerErrors;
                 for (LexError le : lexerErrors) {
                     printError(le, le.getMessage(), "ceylon.lexer", map);
                 }
 
-                java.util.List<ParseError> parserErrors = parser.getErrors();
+                java.util.List<ParseError> parserErrors = source.parserErrors;
                 for (ParseError pe : parserErrors) {
                     printError(pe, pe.getMessage(), "ceylon.parser", map);
                 }
@@ -464,7 +519,7 @@ public class LanguageCompiler extends JavaCompiler {
                      */
                     com.redhat.ceylon.model.typechecker.model.Package p = modelLoader.findOrCreateModulelessPackage(pkgName == null ? "" : pkgName);
                     phasedUnit = new CeylonPhasedUnit(file, srcDir, cu, p, moduleManager, moduleSourceMapper, ceylonContext, filename, map);
-                    phasedUnit.setSuppressedWarnings(suppressedWarnings);
+                    phasedUnit.setSuppressedWarnings(getSuppressedWarnings());
                     phasedUnits.addPhasedUnit(file, phasedUnit);
                     gen.setMap(map);
 
@@ -477,11 +532,136 @@ public class LanguageCompiler extends JavaCompiler {
             throw new RuntimeException(e);
         }
 
+        return makeErroneousCompilationUnit(filename);
+    }
+
+    private JCCompilationUnit makeErroneousCompilationUnit(JavaFileObject filename) {
         JCCompilationUnit result = make.TopLevel(List.<JCAnnotation> nil(), null, List.<JCTree> of(make.Erroneous()));
         result.sourcefile = filename;
         return result;
     }
 
+    /**
+     * Returns the warnings to suppress, which are the same for every
+     * source file. The set is shared by all the phased units, so it
+     * must not be modified.
+     */
+    private EnumSet<Warning> getSuppressedWarnings() {
+        if (suppressedWarnings == null) {
+            String suppressWarnings = options.get(OptionName.CEYLONSUPPRESSWARNINGS);
+            if (suppressWarnings != null) {
+                if (suppressWarnings.trim().isEmpty()) {
+                    suppressedWarnings = EnumSet.allOf(Warning.class);
+                } else {
+                    suppressedWarnings = EnumSet.noneOf(Warning.class);
+                    for (String name : suppressWarnings.trim().split(" *, *")) {
+                        suppressedWarnings.add(Warning.valueOf(name));
+                    }
+                }
+            } else {
+                suppressedWarnings = EnumSet.noneOf(Warning.class);
+            }
+        }
+        return suppressedWarnings;
+    }
+
+    /**
+     * Returns the array backing the given source, if we can use it
+     * as is, that is if the source starts at its first character.
+     * The array may be longer than the source.
+     */
+    private static char[] getSourceArray(CharSequence source) {
+        if (source instanceof CharBuffer) {
+            CharBuffer buffer = (CharBuffer) source;
+            if (buffer.hasArray()
+                    && buffer.arrayOffset() + buffer.position() == 0)
+                return buffer.array();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the characters of the given source, for when we can't
+     * get at the array backing it.
+     */
+    private static char[] copySourceChars(CharSequence source) {
+        int length = source.length();
+        char[] chars = new char[length];
+        if (source instanceof CharBuffer)
+            ((CharBuffer) source).duplicate().get(chars);
+        else
+            source.toString().getChars(0, length, chars, 0);
+        return chars;
+    }
+
+    /**
+     * Lexes and parses the Ceylon files on several threads, ahead of
+     * {@link #parseFiles(Iterable)}, which then picks up the results in
+     * the original order, so that logging errors, creating packages and
+     * registering phased units stays single-threaded and deterministic.
+     * The number of threads defaults to the number of processors, and
+     * can be set with <code>-XDparseThreads=n</code>.
+     */
+    private void parseCeylonFilesInParallel(Iterable<JavaFileObject> fileObjects) {
+        if (shouldStop(CompileState.PARSE) || ceylonEnter.hasRun())
+            return;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String parseThreads = options.get("parseThreads");
+        if (parseThreads != null) {
+            try {
+                threads = Integer.parseInt(parseThreads);
+            } catch (NumberFormatException e) {
+                // keep the default
+            }
+        }
+        if (threads <= 1)
+            return;
+        // reading is done here since the file manager is not thread-safe
+        for (JavaFileObject fileObject : fileObjects) {
+            if (fileObject.getName().endsWith(".java")
+                    || preParsedSources.containsKey(fileObject)
+                    || unreadableSources.contains(fileObject))
+                continue;
+            JavaFileObject prev = log.useSource(fileObject);
+            try {
+                CharSequence content = readSource(fileObject);
+                if (content != null)
+                    preParsedSources.put(fileObject, new CeylonSource(content));
+                else
+                    unreadableSources.add(fileObject);
+            } finally {
+                log.useSource(prev);
+            }
+        }
+        if (preParsedSources.size() < 2)
+            return;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, preParsedSources.size()));
+        try {
+            java.util.List<Future<Void>> results = new java.util.ArrayList<Future<Void>>(preParsedSources.size());
+            for (final CeylonSource source : preParsedSources.values()) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        source.parse();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    // the file will be parsed again on the compiler thread,
+                    // which reports the problem like a sequential parse would
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Override
     public List<JCCompilationUnit> parseFiles(Iterable<JavaFileObject> fileObjects) {
         timer.startTask("parse");
@@ -489,11 +669,18 @@ public class LanguageCompiler extends JavaCompiler {
          * Stef: see javadoc for fixDefaultPackage() for why this is here.
          */
         modelLoader.fixDefaultPackage();
+        parseCeylonFilesInParallel(fileObjects);
         List<JCCompilationUnit> trees = super.parseFiles(fileObjects);
+        preParsedSources.clear();
+        unreadableSources.clear();
+        if (verboseParse)
+            Log.printLines(log.noticeWriter, "[parsed " + trees.size() + " files: " + sourceBytesCopied + " bytes copied]");
         timer.startTask("loadCompiledModules");
         LinkedList<JCCompilationUnit> moduleTrees = new LinkedList<JCCompilationUnit>();
         // now load modules and associate their moduleless packages with the corresponding modules
         trees = loadCompiledModules(trees, moduleTrees);
+        // now that we know their modules, skip the files that did not change since the last compilation
+        trees = incrementalCompilation.prune(trees, phasedUnits);
         /*
          * Stef: see javadoc for cacheModulelessPackages() for why this is here.
          */
@@ -890,4 +1077,22 @@ public class LanguageCompiler extends JavaCompiler {
         super.generate(queue, results);
         timer.endTask();
     }
+
+    @Override
+    public void reportDeferredDiagnostics() {
+        // we get here once every class has been generated, but before the module archives are written,
+        // unless we aborted, in which case we'd better not record anything
+        if (ceylonEnter.hasRun() && todo != null && todo.isEmpty()) {
+            incrementalCompilation.record(phasedUnits);
+        }
+        super.reportDeferredDiagnostics();
+    }
+
+    /**
+     * Returns true if incremental compilation found source files that we skipped but must be compiled
+     * again because a declaration they use changed.
+     */
+    public boolean isIncrementalRecompilationNeeded() {
+        return incrementalCompilation.isRecompilationNeeded();
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
+
+/**
+ * A {@link NewlineFixingStringStream} which reads the characters of a
+ * source file straight from the buffer they were decoded into, rather than
+ * from a copy. The buffer may be longer than the source, and must not be
+ * modified while the stream is in use.
+ */
+class SourceCharStream extends NewlineFixingStringStream {
+
+    SourceCharStream(char[] data, int length) {
+        super("");
+        this.data = data;
+        this.n = length;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Records the compiler phases reported to the {@link Timer}, the code
+ * generation time of each compilation unit, a few model loader counters,
+ * and the heap and garbage collector activity during each phase, and
+ * writes them as JSON to the file given with the <code>-profile</code>
+ * option when the compilation ends.
+ *
+ * Unlike the <code>-verbose:benchmark</code> output, this is meant to be
+ * read by tools, so its format only ever gets new fields. Times are in
+ * nanoseconds, relative to the start of the compilation, and memory is
+ * in bytes.
+ */
+public class Profiler {
+
+    private static final Context.Key<Profiler> profilerKey = new Context.Key<Profiler>();
+
+    public static Profiler instance(Context context) {
+        Profiler instance = context.get(profilerKey);
+        if (instance == null){
+            instance = new Profiler(context);
+            context.put(profilerKey, instance);
+        }
+        return instance;
+    }
+
+    /** A snapshot of the heap and the garbage collectors */
+    private static class Snapshot {
+        final long time;
+        final long heapUsed;
+        final long gcCount;
+        final long gcTime;
+
+        Snapshot() {
+            time = System.nanoTime();
+            heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            long count = 0, millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                // both are -1 when not supported
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            gcCount = count;
+            gcTime = millis * 1000000;
+        }
+    }
+
+    private static class Phase {
+        final String name;
+        final Snapshot start;
+        Snapshot end;
+
+        Phase(String name) {
+            this.name = name;
+            this.start = new Snapshot();
+        }
+    }
+
+    private static class Unit {
+        final String phase;
+        final String file;
+        final long time;
+
+        Unit(String phase, String file, long time) {
+            this.phase = phase;
+            this.file = file;
+            this.time = time;
+        }
+    }
+
+    private final Context context;
+    /** Where we write the profile, or null if we're not profiling */
+    private final File file;
+    private Snapshot start;
+    private Phase current;
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final List<Unit> units = new ArrayList<Unit>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private boolean ended = false;
+
+    private Profiler(Context context) {
+        this.context = context;
+        Options options = Options.instance(context);
+        String path = options.get(OptionName.CEYLONPROFILE);
+        if (path != null) {
+            File file = new File(path);
+            String cwd = options.get(OptionName.CEYLONCWD);
+            if (cwd != null && !file.isAbsolute()) {
+                file = new File(cwd, path);
+            }
+            this.file = file;
+        } else {
+            this.file = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Starts the profile, this should be called once, before the first
+     * phase.
+     */
+    public void start() {
+        if (file == null)
+            return;
+        start = new Snapshot();
+    }
+
+    /**
+     * Ends the current phase, if any, and starts the given one.
+     */
+    public void startPhase(String name) {
+        if (file == null)
+            return;
+        endPhase();
+        current = new Phase(name);
+        phases.add(current);
+    }
+
+    /**
+     * Ends the current phase, if any.
+     */
+    public void endPhase() {
+        if (current != null) {
+            current.end = new Snapshot();
+            current = null;
+        }
+    }
+
+    /**
+     * Records the time spent on the given compilation unit during the
+     * current phase.
+     */
+    public void unit(String file, long nanos) {
+        if (this.file == null)
+            return;
+        units.add(new Unit(current != null ? current.name : null, file, nanos));
+    }
+
+    /**
+     * Records the value of a counter, replacing any previous value.
+     */
+    public void counter(String name, long value) {
+        if (file == null)
+            return;
+        counters.put(name, value);
+    }
+
+    /**
+     * Ends the profile and writes it out, unless that was already done. 
+     * Failing to write the profile does not fail the compilation.
+     */
+    public void end() {
+        if (file == null || ended)
+            return;
+        ended = true;
+        endPhase();
+        Snapshot end = new Snapshot();
+        if (start == null) {
+            start = phases.isEmpty() ? end : phases.get(0).start;
+        }
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                write(out, end);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // we're created before the Log output is set up, so get it now
+            Log.instance(context).warning("ceylon.profile.cant.write", file, e.getMessage());
+        }
+    }
+
+    private void write(Writer out, Snapshot end) throws IOException {
+        out.write("{\n");
+        out.write("  \"version\": 1,\n");
+        out.write("  \"time\": " + (end.time - start.time) + ",\n");
+        writeMemory(out, "  ", start, end);
+        out.write(",\n  \"phases\": [");
+        String sep = "\n";
+        for (Phase phase : phases) {
+            out.write(sep);
+            out.write("    {\"name\": " + quote(phase.name)
+                    + ", \"start\": " + (phase.start.time - start.time)
+                    + ", \"time\": " + (phase.end.time - phase.start.time) + ", ");
+            writeMemory(out, "", phase.start, phase.end);
+            out.write("}");
+            sep = ",\n";
+        }
+        out.write("\n  ],\n  \"units\": [");
+        sep = "\n";
+        for (Unit unit : units) {
+            out.write(sep);
+            out.write("    {\"phase\": " + quote(unit.phase)
+                    + ", \"file\": " + quote(unit.file)
+                    + ", \"time\": " + unit.time + "}");
+            sep = ",\n";
+        }
+        out.write("\n  ],\n  \"counters\": {");
+        sep = "\n";
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            out.write(sep);
+            out.write("    " + quote(counter.getKey()) + ": " + counter.getValue());
+            sep = ",\n";
+        }
+        out.write("\n  }\n}\n");
+    }
+
+    private void writeMemory(Writer out, String indent, Snapshot start, Snapshot end) throws IOException {
+        out.write(indent + "\"heapUsedBefore\": " + start.heapUsed
+                + ", \"heapUsedAfter\": " + end.heapUsed
+                + ", \"gcCount\": " + (end.gcCount - start.gcCount)
+                + ", \"gcTime\": " + (end.gcTime - start.gcTime));
+    }
+
+    private static String quote(String s) {
+        if (s == null)
+            return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int)c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
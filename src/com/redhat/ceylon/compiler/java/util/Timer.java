@@ -24,10 +24,17 @@ import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.Options;
 
+/**
+ * The compiler's {@link com.redhat.ceylon.model.loader.Timer}, which 
+ * prints its tasks with <code>-verbose:benchmark</code>, and also
+ * reports them as phases to the {@link Profiler}.
+ */
 public class Timer extends com.redhat.ceylon.model.loader.Timer {
 
     private static final Context.Key<Timer> timerKey = new Context.Key<Timer>();
     
+    private final Profiler profiler;
+    
     public static Timer instance(Context context) {
         Timer instance = (Timer)context.get(timerKey);
         if (instance == null){
@@ -42,5 +49,24 @@ public class Timer extends com.redhat.ceylon.model.loader.Timer {
         verbose = options.get(OptionName.VERBOSE) != null 
                 || options.get(OptionName.VERBOSE + ":benchmark" ) != null;
         out = context.get(Log.outKey);
+        profiler = Profiler.instance(context);
+    }
+    
+    @Override
+    public void init() {
+        super.init();
+        profiler.start();
+    }
+    
+    @Override
+    public void startTask(String name) {
+        super.startTask(name);
+        profiler.startPhase(name);
+    }
+    
+    @Override
+    public void endTask() {
+        super.endTask();
+        profiler.endPhase();
     }
 }
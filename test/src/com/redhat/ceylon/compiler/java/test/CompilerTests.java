@@ -492,6 +492,12 @@ public abstract class CompilerTests {
         Assert.assertEquals("Source code differs", expectedSrc, compiledSrc);
     }
 
+    protected Object compileAndRun(List<String> options, String main, String... ceylon) {
+        ErrorCollector c = new ErrorCollector();
+        assertCompilesOk(c, getCompilerTask(options, c, ceylon).call2());
+        return run(main);
+    }
+
     protected void assertCompilesOk(ErrorCollector collector, ExitState exitState)
             throws AssertionError {
         switch (exitState.ceylonState) {
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -35,7 +36,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,11 +48,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
@@ -72,6 +77,7 @@ import org.junit.Test;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.common.config.Repositories;
+import com.redhat.ceylon.compiler.java.launcher.Main;
 import com.redhat.ceylon.compiler.java.test.CompilerError;
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
 import com.redhat.ceylon.compiler.java.test.ErrorCollector;
@@ -184,6 +190,213 @@ public class CMRTests extends CompilerTests {
         compile("modules/incremental/A.ceylon", "modules/incremental/UsesB.ceylon");
     }
 
+    @Test
+    public void testMdlModuleIncrementalDependencies() throws IOException{
+        List<String> options = new LinkedList<String>();
+        options.add("-incremental");
+        options.addAll(defaultOptions);
+        CeyloncTaskImpl task = getCompilerTask(options, 
+                "modules/incremental/A.ceylon", "modules/incremental/BUsesA.ceylon", "modules/incremental/UsesB.ceylon");
+        assertTrue(task.call());
+
+        File carFile = getModuleArchive("default", null);
+        Properties dependencies = readDependencyInfo();
+        String path = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/";
+        String pkg = "com.redhat.ceylon.compiler.java.test.cmr.modules.incremental::";
+        assertNotNull(dependencies.getProperty("hash:"+path+"A.ceylon"));
+        assertTrue(dependencies.getProperty("declares:"+path+"A.ceylon").contains(pkg+"AInterface="));
+        assertTrue(dependencies.getProperty("uses:"+path+"BUsesA.ceylon").contains(pkg+"AInterface"));
+        assertTrue(dependencies.getProperty("uses:"+path+"UsesB.ceylon").contains(pkg+"BUsesA"));
+        assertNull(dependencies.getProperty("stale:"+path+"UsesB.ceylon"));
+        // no date comment, so that it's the same every time
+        String dependenciesText = readDependencyInfoText();
+        assertFalse(dependenciesText, dependenciesText.contains("#"));
+
+        // nothing changed, so nothing to compile but the archive must still be complete
+        task = getCompilerTask(options, 
+                "modules/incremental/A.ceylon", "modules/incremental/BUsesA.ceylon", "modules/incremental/UsesB.ceylon");
+        assertTrue(task.call());
+        assertEquals(dependenciesText, readDependencyInfoText());
+        ZipFile car = new ZipFile(carFile);
+        assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/UsesB.class"));
+        assertNotNull(car.getEntry("META-INF/dependencies.txt"));
+        car.close();
+    }
+
+    @Test
+    public void testMdlModuleIncrementalSignatureChange() throws IOException{
+        File src = makeIncrementalSourceDir();
+        writeSource(src, "A.ceylon", "shared Integer a() => 1;");
+        writeSource(src, "UsesA.ceylon", "shared String usesA() => a().string;");
+        writeSource(src, "Other.ceylon", "shared Integer other() => 3;");
+        String output = compileIncrementally(src, "A.ceylon", "UsesA.ceylon", "Other.ceylon");
+        assertTrue(output.contains("[Incremental compilation of default: no dependency information, compiling all files]"));
+        assertEquals("1", run("usesA"));
+
+        // same signature: the other files are pruned and nothing is stale
+        writeSource(src, "A.ceylon", "shared Integer a() => 2;");
+        output = compileIncrementally(src, "A.ceylon", "UsesA.ceylon", "Other.ceylon");
+        assertTrue(output.contains("[Incremental compilation of default: compiling 1 out of 3 files]"));
+        assertFalse(output.contains("as stale]"));
+        assertEquals("2", run("usesA"));
+
+        // new signature: the file using it is marked stale and compiled in a second pass
+        writeSource(src, "A.ceylon", "shared Float a() => 2.5;");
+        output = compileIncrementally(src, "A.ceylon", "UsesA.ceylon", "Other.ceylon");
+        assertTrue(output.contains("[Incremental compilation of default: marking UsesA.ceylon as stale]"));
+        assertFalse(output.contains("marking Other.ceylon as stale"));
+        assertEquals(2, count(output, "[Incremental compilation of default: compiling 1 out of 3 files]"));
+        assertEquals("2.5", run("usesA"));
+        assertNoStaleFile(readDependencyInfo());
+    }
+
+    @Test
+    public void testMdlModuleIncrementalInheritedMemberChange() throws IOException{
+        File src = makeIncrementalSourceDir();
+        writeSource(src, "I.ceylon", "shared interface I { shared default Integer i() => 1; }");
+        writeSource(src, "J.ceylon", "shared interface J satisfies I {}");
+        writeSource(src, "C.ceylon", "shared class C() satisfies J {}");
+        writeSource(src, "Use.ceylon", "shared Integer use() => C().i();");
+        compileIncrementally(src, "I.ceylon", "J.ceylon", "C.ceylon", "Use.ceylon");
+        assertEquals(Long.valueOf(1), run("use"));
+
+        // C only names J, but it must implement the new member of I
+        writeSource(src, "I.ceylon", "shared interface I { shared default Integer i() => 1; shared default Integer k() => 2; }");
+        writeSource(src, "Use.ceylon", "shared Integer use() => C().i() + C().k();");
+        String output = compileIncrementally(src, "I.ceylon", "J.ceylon", "C.ceylon", "Use.ceylon");
+        assertTrue(output.contains("[Incremental compilation of default: compiling 2 out of 4 files]"));
+        assertTrue(output.contains("[Incremental compilation of default: marking J.ceylon as stale]"));
+        assertTrue(output.contains("[Incremental compilation of default: marking C.ceylon as stale]"));
+        assertEquals(Long.valueOf(3), run("use"));
+        assertNoStaleFile(readDependencyInfo());
+    }
+
+    @Test
+    public void testMdlModuleIncrementalImportedModuleChange() throws IOException{
+        File src = makeIncrementalSourceDir();
+        new File(src, "a").mkdirs();
+        new File(src, "b").mkdirs();
+        writeSource(src, "a/module.ceylon", "module a \"1\" {}");
+        writeSource(src, "a/package.ceylon", "shared package a;");
+        writeSource(src, "a/A.ceylon", "shared Integer a() => 1;");
+        writeSource(src, "b/module.ceylon", "module b \"1\" { import a \"1\"; }");
+        writeSource(src, "b/UsesA.ceylon", "import a { a } shared String usesA() => a().string;");
+        writeSource(src, "b/Other.ceylon", "shared Integer other() => 3;");
+        compileIncrementally(src, "a/module.ceylon", "a/package.ceylon", "a/A.ceylon");
+        compileIncrementally(src, "b/module.ceylon", "b/UsesA.ceylon", "b/Other.ceylon");
+        assertEquals("1", runUsesA());
+
+        // same signature in a separate compilation: b does not need compiling again
+        writeSource(src, "a/A.ceylon", "shared Integer a() => 2;");
+        compileIncrementally(src, "a/module.ceylon", "a/package.ceylon", "a/A.ceylon");
+        String output = compileIncrementally(src, "b/module.ceylon", "b/UsesA.ceylon", "b/Other.ceylon");
+        assertFalse(output.contains("changed, compiling all files]"));
+        assertEquals("2", runUsesA());
+
+        // new signature in a separate compilation: b must not keep linking against the old one
+        writeSource(src, "a/A.ceylon", "shared Float a() => 2.5;");
+        compileIncrementally(src, "a/module.ceylon", "a/package.ceylon", "a/A.ceylon");
+        output = compileIncrementally(src, "b/module.ceylon", "b/UsesA.ceylon", "b/Other.ceylon");
+        assertTrue(output.contains("[Incremental compilation of b: imported module a/1 changed, compiling all files]"));
+        assertEquals("2.5", runUsesA());
+    }
+
+    private Object runUsesA() {
+        return run("b.usesA", new ModuleWithArtifact("b", "1"), new ModuleWithArtifact("a", "1"));
+    }
+
+    private File makeIncrementalSourceDir() {
+        File src = new File(destDir, "incremental-src");
+        FileUtil.delete(src);
+        src.mkdirs();
+        return src;
+    }
+
+    private void writeSource(File src, String name, String contents) throws IOException {
+        Writer writer = new FileWriter(new File(src, name));
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Compiles with the command line compiler, which compiles stale files
+     * again until there are none left, and returns its verbose output.
+     */
+    private String compileIncrementally(File src, String... files) {
+        List<String> args = new ArrayList<String>();
+        args.add("-incremental");
+        args.add("-verbose");
+        args.add("-src");
+        args.add(src.getPath());
+        args.addAll(defaultOptions);
+        for (String file : files) {
+            args.add(new File(src, file).getPath());
+        }
+        StringWriter output = new StringWriter();
+        Main compiler = new Main("ceylonc", new PrintWriter(output, true));
+        int result = compiler.compile(args.toArray(new String[args.size()]));
+        assertEquals(output.toString(), Main.EXIT_OK, result);
+        assertFalse(compiler.incrementalRecompilationNeeded);
+        return output.toString();
+    }
+
+    private Properties readDependencyInfo() throws IOException {
+        ZipFile car = new ZipFile(getModuleArchive("default", null));
+        try {
+            ZipEntry entry = car.getEntry("META-INF/dependencies.txt");
+            assertNotNull(entry);
+            Properties dependencies = new Properties();
+            InputStream inputStream = car.getInputStream(entry);
+            try {
+                dependencies.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            return dependencies;
+        } finally {
+            car.close();
+        }
+    }
+
+    private String readDependencyInfoText() throws IOException {
+        ZipFile car = new ZipFile(getModuleArchive("default", null));
+        try {
+            ZipEntry entry = car.getEntry("META-INF/dependencies.txt");
+            assertNotNull(entry);
+            InputStream inputStream = car.getInputStream(entry);
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return bytes.toString("ISO-8859-1");
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            car.close();
+        }
+    }
+
+    private void assertNoStaleFile(Properties dependencies) {
+        for (String key : dependencies.stringPropertyNames()) {
+            assertFalse(key, key.startsWith("stale:"));
+        }
+    }
+
+    private int count(String string, String substring) {
+        int count = 0;
+        for (int i = string.indexOf(substring); i != -1; i = string.indexOf(substring, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
     @Test
     public void testMdlModuleDefaultIncrementalNoPackage() throws IOException{
         List<String> options = new LinkedList<String>();
@@ -510,6 +723,68 @@ public class CMRTests extends CompilerTests {
         sourceFile.delete();
     }
 
+    @Test
+    public void testMdlAppendToCar() throws IOException{
+        File sourceFile = new File(getPackagePath(), "modules/single/SuppressClass.ceylon");
+        List<String> options = new LinkedList<String>();
+        options.add("-append-car");
+        options.addAll(defaultOptions);
+
+        copy(new File(getPackagePath(), "modules/single/SuppressClass_1.ceylon"), sourceFile);
+        CeyloncTaskImpl compilerTask = getCompilerTask(options, "modules/single/module.ceylon", "modules/single/SuppressClass.ceylon");
+        assertTrue(compilerTask.call());
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.single", "6.6.6");
+        assertTrue(carFile.exists());
+
+        copy(new File(getPackagePath(), "modules/single/SuppressClass_2.ceylon"), sourceFile);
+        final List<String> notes = new ArrayList<String>();
+        compilerTask = getCompilerTask(options, new DiagnosticListener<FileObject>() {
+            @Override
+            public void report(Diagnostic<? extends FileObject> diagnostic) {
+                if (diagnostic.getKind() == Diagnostic.Kind.NOTE)
+                    notes.add(diagnostic.getMessage(null));
+            }
+        }, "modules/single/module.ceylon", "modules/single/SuppressClass.ceylon");
+        assertTrue(compilerTask.call());
+        assertTrue(notes.toString(), notes.contains("Updated module com.redhat.ceylon.compiler.java.test.cmr.modules.single/6.6.6 in place"));
+
+        JarFile car = new JarFile(carFile);
+        assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/single/One.class"));
+        assertNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/single/Two.class"));
+        assertNotNull(car.getEntry("META-INF/mapping.txt"));
+        Manifest manifest = car.getManifest();
+        assertNotNull(manifest);
+        Set<String> names = new HashSet<String>();
+        Enumeration<JarEntry> entries = car.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        car.close();
+
+        // reading the car as a stream must give the same entries, without the replaced ones
+        JarInputStream jarInputStream = new JarInputStream(new FileInputStream(carFile));
+        try {
+            Manifest streamedManifest = jarInputStream.getManifest();
+            Set<String> streamedNames = new HashSet<String>();
+            JarEntry entry;
+            while ((entry = jarInputStream.getNextJarEntry()) != null) {
+                assertTrue(entry.getName(), streamedNames.add(entry.getName()));
+                if (entry.getName().equals(JarFile.MANIFEST_NAME)) {
+                    streamedManifest = new Manifest(jarInputStream);
+                }
+            }
+            assertEquals(manifest, streamedManifest);
+            // JarInputStream hides the manifest when it comes first
+            names.removeAll(streamedNames);
+            names.remove("META-INF/");
+            names.remove(JarFile.MANIFEST_NAME);
+            assertTrue(names.toString(), names.isEmpty());
+        } finally {
+            jarInputStream.close();
+        }
+
+        sourceFile.delete();
+    }
     
     @Test
     public void testMdlMultipleRepos(){
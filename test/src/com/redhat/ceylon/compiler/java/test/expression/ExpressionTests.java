@@ -20,7 +20,10 @@
 package com.redhat.ceylon.compiler.java.test.expression;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.redhat.ceylon.compiler.java.test.CompilerError;
@@ -535,6 +538,20 @@ public class ExpressionTests extends CompilerTests {
         compareWithJavaSource("lambda/AnonMemberQual");
     }
     
+    @Test
+    public void testRefCallableConstants() throws ReflectiveOperationException {
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-XDcallableConstants");
+        compileAndRun(options, "com.redhat.ceylon.compiler.java.test.expression.ref.callableConstants",
+                "ref/CallableConstants.ceylon");
+        // both references evaluate to the same instance
+        Object references = run("com.redhat.ceylon.compiler.java.test.expression.ref.callableConstantsReferences");
+        Object first = references.getClass().getMethod("getFirst").invoke(references);
+        Object last = references.getClass().getMethod("getLast").invoke(references);
+        Assert.assertSame(first, last);
+        compareWithJavaSource(options, "ref/CallableConstantsHolder.src", "ref/CallableConstantsHolder.ceylon");
+    }
+    
     //
     // Optimisations
 
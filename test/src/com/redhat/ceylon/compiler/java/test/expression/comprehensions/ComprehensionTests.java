@@ -20,6 +20,8 @@
 package com.redhat.ceylon.compiler.java.test.expression.comprehensions;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -234,6 +236,14 @@ public class ComprehensionTests extends CompilerTests {
         Assert.assertEquals(size, array.length);
     }
     
+    @Test
+    public void testComprehensionLoopFusion() {
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-XDcomprehensionLoopFusion");
+        compileAndRun(options, "com.redhat.ceylon.compiler.java.test.expression.comprehensions.comprehensionLoopFusion",
+                "ComprehensionLoopFusion.ceylon");
+    }
+    
     @Test
     public void testComprehensionMemberQual() {
         compareWithJavaSource("ComprehensionMemberQual");
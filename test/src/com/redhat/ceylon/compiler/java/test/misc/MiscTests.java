@@ -27,6 +27,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
 
 import org.junit.Assert;
@@ -70,6 +73,71 @@ public class MiscTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main", "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
     }
 
+    @Test
+    public void testProfile() throws Exception{
+        File profile = new File(destDir, "profile.json");
+        profile.delete();
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-profile");
+        options.add(profile.getPath());
+        Boolean result = getCompilerTask(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon").call();
+        Assert.assertEquals(Boolean.TRUE, result);
+        String json = readFile(profile);
+        Assert.assertTrue(json, json.contains("\"name\": \"Ceylon type checking\""));
+        Assert.assertTrue(json, json.contains("\"name\": \"Ceylon code generation\""));
+        Assert.assertTrue(json, json.contains("One.ceylon"));
+        Assert.assertTrue(json, json.contains("Two.ceylon"));
+        Assert.assertTrue(json, json.contains("\"heapUsedAfter\": "));
+        Assert.assertTrue(json, json.contains("\"modules\": "));
+    }
+
+    @Test
+    public void testProfileUnwritableFile() throws Exception{
+        // writing to a directory fails, even for root
+        File profile = new File(destDir, "profile-dir.json");
+        profile.mkdirs();
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-profile");
+        options.add(profile.getPath());
+        final List<Diagnostic<? extends FileObject>> warnings = new ArrayList<Diagnostic<? extends FileObject>>();
+        DiagnosticListener<FileObject> listener = new DiagnosticListener<FileObject>(){
+            @Override
+            public void report(Diagnostic<? extends FileObject> diagnostic) {
+                if("compiler.warn.ceylon.profile.cant.write".equals(diagnostic.getCode()))
+                    warnings.add(diagnostic);
+            }
+        };
+        Boolean result = getCompilerTask(options, listener, "twoclasses/One.ceylon", "twoclasses/Two.ceylon").call();
+        // the profile is not worth failing the compilation
+        Assert.assertEquals(Boolean.TRUE, result);
+        Assert.assertEquals(warnings.toString(), 1, warnings.size());
+    }
+
+    @Test
+    public void testParallelParseUnreadableFile() throws Exception{
+        // reading a directory fails, even for root
+        File unreadable = new File(getPackagePath(), "twoclasses/Unreadable.ceylon");
+        Assert.assertTrue(unreadable.mkdir());
+        try{
+            List<String> options = new ArrayList<String>(defaultOptions);
+            options.add("-XDparseThreads=4");
+            final List<Diagnostic<? extends FileObject>> readErrors = new ArrayList<Diagnostic<? extends FileObject>>();
+            DiagnosticListener<FileObject> listener = new DiagnosticListener<FileObject>(){
+                @Override
+                public void report(Diagnostic<? extends FileObject> diagnostic) {
+                    if("compiler.err.error.reading.file".equals(diagnostic.getCode()))
+                        readErrors.add(diagnostic);
+                }
+            };
+            Boolean result = getCompilerTask(options, listener, "twoclasses/One.ceylon", "twoclasses/Two.ceylon",
+                    "twoclasses/Unreadable.ceylon", "twoclasses/main.ceylon").call();
+            Assert.assertEquals(Boolean.FALSE, result);
+            Assert.assertEquals(readErrors.toString(), 1, readErrors.size());
+        }finally{
+            unreadable.delete();
+        }
+    }
+
     @Test
     public void testEqualsHashOverriding(){
         compareWithJavaSource("equalshashoverriding/EqualsHashOverriding");
@@ -1280,6 +1280,69 @@ public class ModelLoaderTests extends CompilerTests {
         }, Arrays.asList("-verbose:loader"));
     }
 
+    @Ignore("Benchmarks how model loader lookups scale with the number of threads")
+    @Test
+    public void parallelLoaderContentionBenchmark(){
+        // whatever test, doesn't matter
+        verifyCompilerClassLoading("Any.ceylon", new RunnableTest(){
+            @Override
+            public void test(ModelLoader loader) {
+                final AbstractModelLoader modelLoader = (AbstractModelLoader) loader;
+                final Module mod = loader.getLoadedModule("java.base", JDKUtils.jdk.version);
+                Assert.assertNotNull(mod);
+                final List<String> packages = new ArrayList<String>();
+                final List<String> classes = new ArrayList<String>();
+                // load everything once so we only measure lookups
+                for(String pkgName : JDKUtils.getJDKPackagesByModule("java.base")){
+                    packages.add(pkgName);
+                    Package p = mod.getDirectPackage(pkgName);
+                    Assert.assertNotNull(p);
+                    for(Declaration decl : p.getMembers()){
+                        classes.add(decl.getQualifiedNameString().replace("::", "."));
+                    }
+                }
+                final int rounds = 20;
+                for(int threads = 1; threads <= 8; threads *= 2){
+                    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threads);
+                    for(int i=0;i<threads;i++){
+                        tasks.add(new Callable<Object>(){
+                            @Override
+                            public Object call() throws Exception {
+                                for(int round=0;round<rounds;round++){
+                                    for(String pkgName : packages){
+                                        modelLoader.loadPackage(mod, pkgName, false);
+                                        modelLoader.loadPackage(mod, pkgName, true);
+                                    }
+                                    for(String className : classes){
+                                        modelLoader.lookupClassMirror(mod, className);
+                                    }
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(threads));
+                    try {
+                        long start = System.nanoTime();
+                        for(Future<Object> f : executor.invokeAll(tasks)){
+                            f.get();
+                        }
+                        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        long lookups = (long)threads * rounds * (2 * packages.size() + classes.size());
+                        System.err.println(threads + " thread(s): " + lookups + " lookups in " + millis + "ms, "
+                                + (lookups * 1000 / Math.max(1, millis)) + " lookups/s");
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } catch (ExecutionException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        executor.shutdown();
+                    }
+                }
+            }
+        });
+    }
+
     protected String moduleForJavaModelLoading() {
         return packageForJavaModelLoading();
     }
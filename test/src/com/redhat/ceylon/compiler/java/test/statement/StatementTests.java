@@ -513,6 +513,12 @@ public class StatementTests extends CompilerTests {
         compareWithJavaSource("swtch/SwitchIsNonExhaustiveCheapestFirst");
     }
     
+    @Test
+    public void testSwitchIsCaseIndex(){
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.swtch.switchIsCaseIndex", 
+                "swtch/SwitchIsCaseIndex.ceylon");
+    }
+    
     @Test
     public void testSwitchIsVarSubst(){
         compareWithJavaSource("swtch/SwitchIsVarSubst");
@@ -533,7 +539,14 @@ public class StatementTests extends CompilerTests {
     public void testSwitchValues(){
         compareWithJavaSource("swtch/SwitchValues");
     }
-    
+
+    @Test
+    public void testSwitchIntegerLiterals(){
+        compareWithJavaSource("swtch/SwitchIntegerLiterals");
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.swtch.switchIntegerLiteralsRun",
+                "swtch/SwitchIntegerLiterals.ceylon", "swtch/SwitchIntegerLiteralsRun.ceylon");
+    }
+
     @Test
     public void testSwitchInlineVar(){
         compareWithJavaSource("swtch/SwitchInlineVar");
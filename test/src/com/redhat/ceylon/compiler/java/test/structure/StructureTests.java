@@ -19,6 +19,9 @@
  */
 package com.redhat.ceylon.compiler.java.test.structure;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
@@ -747,6 +750,15 @@ public class StructureTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.structure.reified.runtime", "reified/Runtime.ceylon");
     }
 
+    @Test
+    public void testRfdTypeDescriptorConstants(){
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-XDtypeDescriptorConstants");
+        compileAndRun(options, "com.redhat.ceylon.compiler.java.test.structure.reified.typeDescriptorConstants",
+                "reified/TypeDescriptorConstants.ceylon");
+        compareWithJavaSource(options, "reified/TypeDescriptorConstantsHolder.src", "reified/TypeDescriptorConstantsHolder.ceylon");
+    }
+
     @Test
     public void testRfdUtilCalls(){
         compareWithJavaSource("reified/UtilCalls");
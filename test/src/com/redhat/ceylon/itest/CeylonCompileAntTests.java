@@ -20,6 +20,8 @@
 package com.redhat.ceylon.itest;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Pattern;
 
 import org.junit.Assert;
@@ -93,6 +95,54 @@ public class CeylonCompileAntTests extends AntBasedTests {
         Assert.assertEquals(lastModified, car.lastModified());
     }
     
+    @Test
+    public void testCompileModuleFooTwiceWithFingerprint() throws Exception {
+        AntResult result = ant("foo-alone-fingerprint");
+        Assert.assertEquals(0, result.getStatusCode());
+        File car = new File(result.getOut(), "com/example/foo/1.0/com.example.foo-1.0.car");
+        Assert.assertTrue(car.exists());
+        Assert.assertTrue(new File(result.getOut(), "com/example/foo/1.0/com.example.foo-1.0.fingerprint").exists());
+        final long lastModified = car.lastModified();
+        
+        // touching a source file doesn't make it out of date
+        File source = new File("test/src/com/redhat/ceylon/itest/com/example/foo/a/foo.ceylon");
+        long sourceLastModified = source.lastModified();
+        try {
+            Assert.assertTrue(source.setLastModified(System.currentTimeMillis() + 60000));
+            result = ant("foo-alone-fingerprint");
+            Assert.assertEquals(0, result.getStatusCode());
+            assertContains(result.getStdout(), "[ceylon-compile] No need to compile com.example.foo/1.0, it's up to date");
+            assertContains(result.getStdout(), "[ceylon-compile] Everything's up to date");
+            Assert.assertEquals(lastModified, car.lastModified());
+        } finally {
+            source.setLastModified(sourceLastModified);
+        }
+    }
+    
+    @Test
+    public void testCompileModuleFooChangedWithFingerprint() throws Exception {
+        AntResult result = ant("foo-alone-fingerprint");
+        Assert.assertEquals(0, result.getStatusCode());
+        File car = new File(result.getOut(), "com/example/foo/1.0/com.example.foo-1.0.car");
+        Assert.assertTrue(car.exists());
+        
+        // changing a source file makes it out of date, even if it looks older
+        File source = new File("test/src/com/redhat/ceylon/itest/com/example/foo/a/foo.ceylon");
+        long sourceLastModified = source.lastModified();
+        byte[] contents = Files.readAllBytes(source.toPath());
+        try {
+            Files.write(source.toPath(), "// changed\n".getBytes("UTF-8"), StandardOpenOption.APPEND);
+            Assert.assertTrue(source.setLastModified(car.lastModified() - 60000));
+            result = ant("foo-alone-fingerprint");
+            Assert.assertEquals(0, result.getStatusCode());
+            assertNotContains(result.getStdout(), "[ceylon-compile] No need to compile com.example.foo/1.0, it's up to date");
+            assertNotContains(result.getStdout(), "[ceylon-compile] Everything's up to date");
+        } finally {
+            Files.write(source.toPath(), contents);
+            source.setLastModified(sourceLastModified);
+        }
+    }
+    
     @Test
     public void testCompileModuleFooVerbosely() throws Exception {
         System.setProperty("arg.verbose", "true");
@@ -183,6 +233,17 @@ public class CeylonCompileAntTests extends AntBasedTests {
         Assert.assertTrue(new File(result.getOut(), "com/example/bar/1.0/com.example.bar-1.0.src.sha1").exists());
     }
     
+    @Test
+    public void testCompileModuleBarAndFooInParallel() throws Exception {
+        // bar imports foo, so foo has to be compiled first
+        AntResult result = ant("bar-and-foo-parallel");
+        Assert.assertEquals(0, result.getStatusCode());
+        Assert.assertTrue(new File(result.getOut(), "com/example/foo/1.0/com.example.foo-1.0.car").exists());
+        Assert.assertTrue(new File(result.getOut(), "com/example/foo/1.0/com.example.foo-1.0.src").exists());
+        Assert.assertTrue(new File(result.getOut(), "com/example/bar/1.0/com.example.bar-1.0.car").exists());
+        Assert.assertTrue(new File(result.getOut(), "com/example/bar/1.0/com.example.bar-1.0.src").exists());
+    }
+    
     @Ignore("This is only useful when debugging memory leaks")
     @Test
     public void testCompileModuleManyTimes() throws Exception {
@@ -19,10 +19,19 @@
  */
 package com.redhat.ceylon.tools.test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -40,10 +49,13 @@ import com.redhat.ceylon.common.tool.ToolLoader;
 import com.redhat.ceylon.common.tool.ToolModel;
 import com.redhat.ceylon.common.tools.CeylonTool;
 import com.redhat.ceylon.common.tools.CeylonToolLoader;
+import com.redhat.ceylon.compiler.CeylonCompileServerTool;
 import com.redhat.ceylon.compiler.CeylonCompileTool;
 import com.redhat.ceylon.compiler.CompilerErrorException;
 import com.redhat.ceylon.compiler.SystemErrorException;
+import com.redhat.ceylon.compiler.java.launcher.CompileServer;
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
+import com.sun.tools.javac.file.ZipFileIndexCache;
 
 public class CompilerToolTests extends AbstractToolTests {
     
@@ -461,4 +473,71 @@ public class CompilerToolTests extends AbstractToolTests {
         }
         
     }
+
+    @Test
+    public void testCompileServer() throws Exception {
+        ServerSocket freePort = new ServerSocket(0);
+        final int port = freePort.getLocalPort();
+        freePort.close();
+        File tokenFile = CompileServer.getTokenFile(port);
+        final CompileServer server = new CompileServer(port);
+        Thread thread = new Thread("Compile server") {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            for (int i = 0; i < 100 && !tokenFile.exists(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(tokenFile.exists());
+
+            ToolModel<CeylonCompileTool> model = pluginLoader.loadToolModel("compile");
+            Assert.assertNotNull(model);
+            CeylonCompileTool tool = pluginFactory.bindArguments(model, getMainTool(),
+                    options("--server", String.valueOf(port), "--src=test/src", "com.redhat.ceylon.tools.test.ceylon"));
+            tool.run();
+            assertTrue(getModuleArchive("com.redhat.ceylon.tools.test.ceylon", "1.0").exists());
+
+            // the second build reuses the archive indexes of the first one
+            long hits = ZipFileIndexCache.getSharedInstance().getHitCount();
+            tool = pluginFactory.bindArguments(model, getMainTool(),
+                    options("--server", String.valueOf(port), "--src=test/src", "com.redhat.ceylon.tools.test.ceylon"));
+            tool.run();
+            assertTrue(ZipFileIndexCache.getSharedInstance().getHitCount() > hits);
+
+            // requests without the token are refused
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            try {
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                writer.write("not the token\n-version\nEND\n");
+                writer.flush();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                Assert.assertEquals("ERROR: invalid compile server token", reader.readLine());
+                Assert.assertNull(reader.readLine());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.close();
+            thread.join(10000);
+        }
+        assertFalse(tokenFile.exists());
+    }
+
+    @Test
+    public void testCompileServerTool() throws Exception {
+        ToolModel<CeylonCompileServerTool> model = pluginLoader.loadToolModel("compile-server");
+        Assert.assertNotNull(model);
+        CeylonCompileServerTool tool = pluginFactory.bindArguments(model, getMainTool(),
+                Arrays.asList("--port", "12345"));
+        Assert.assertNotNull(tool);
+    }
 }